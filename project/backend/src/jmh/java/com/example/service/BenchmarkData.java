@@ -0,0 +1,94 @@
+package com.example.service;
+
+import com.example.SystemPrompts;
+import com.google.gson.Gson;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Synthetic but realistically sized conversation data for the benchmarks. */
+final class BenchmarkData {
+    private static final String[] PATIENT_LINES = {
+            "Jag har haft svårt att sova de senaste veckorna, tankarna snurrar hela tiden.",
+            "Det är mest jobbet tror jag. Min chef ställer krav som jag inte hinner med och jag känner mig otillräcklig.",
+            "Ja, hemma är det också lite spänt. Min sambo tycker att jag jobbar för mycket.",
+            "Jag vet inte riktigt. Kanske att jag alltid har velat vara den som klarar allt själv.",
+            "När jag var liten fick jag ofta ta hand om mina småsyskon när mamma jobbade kväll.",
+    };
+    private static final String[] ERIK_LINES = {
+            "Det låter tungt. Hur märks det mest på dagarna?",
+            "Jag förstår. Vad händer i kroppen när du känner dig otillräcklig?",
+            "Hur pratar ni om det hemma, du och din sambo?",
+            "Intressant att du säger så. Var tror du att den känslan kommer ifrån?",
+            "Det var mycket ansvar för ett barn. Hur ser du på det idag?",
+    };
+
+    private BenchmarkData() {
+    }
+
+    static List<Map<String, Object>> conversation(int turns) {
+        List<Map<String, Object>> messages = new ArrayList<>(turns * 2 + 1);
+        Map<String, Object> system = new HashMap<>();
+        system.put("role", "system");
+        system.put("content", SystemPrompts.SYSTEM_PROMPT);
+        messages.add(system);
+
+        long start = 1_700_000_000_000L;
+        for (int i = 0; i < turns; i++) {
+            messages.add(message("user", PATIENT_LINES[i % PATIENT_LINES.length], start + i * 40_000L, i * 2 + 1));
+            messages.add(message("assistant", ERIK_LINES[i % ERIK_LINES.length], start + i * 40_000L + 3_000L, i * 2 + 2));
+        }
+        return messages;
+    }
+
+    /** The same conversation as {@link #conversation} held the way a session keeps it. */
+    static ConversationLog.Snapshot log(int turns) {
+        ConversationLog log = new ConversationLog(turns * 2);
+        long start = 1_700_000_000_000L;
+        for (int i = 0; i < turns; i++) {
+            log.append(ChatMessage.USER, PATIENT_LINES[i % PATIENT_LINES.length], start + i * 40_000L, i * 40_000L);
+            log.append(ChatMessage.ASSISTANT, ERIK_LINES[i % ERIK_LINES.length], start + i * 40_000L + 3_000L,
+                    i * 40_000L + 3_000L);
+        }
+        return log.snapshot();
+    }
+
+    static List<String> thoughts(int count) {
+        List<String> thoughts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            thoughts.add("Patienten verkar bära ett stort ansvar och har svårt att be om hjälp (" + i + ")");
+        }
+        return thoughts;
+    }
+
+    static String thoughtsResponse(int lines) {
+        StringBuilder response = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            response.append("- Möjligt samband mellan sömnproblemen och prestationskrav på jobbet ").append(i).append('\n');
+        }
+        return response.toString();
+    }
+
+    static byte[] completionResponse(String content) {
+        String json = "{\"id\":\"chatcmpl-bench\",\"object\":\"chat.completion\",\"created\":1700000000,"
+                + "\"model\":\"gpt-4o-mini\",\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":"
+                + new Gson().toJson(content)
+                + ",\"refusal\":null},\"logprobs\":null,\"finish_reason\":\"stop\"}],"
+                + "\"usage\":{\"prompt_tokens\":1523,\"completion_tokens\":212,\"total_tokens\":1735,"
+                + "\"prompt_tokens_details\":{\"cached_tokens\":1024}},\"system_fingerprint\":\"fp_bench\"}";
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, Object> message(String role, String content, long timestamp, long seq) {
+        Map<String, Object> message = new HashMap<>();
+        message.put("role", role);
+        message.put("content", content);
+        message.put("timestamp", timestamp);
+        message.put("session_time", timestamp - 1_700_000_000_000L);
+        message.put("seq", seq);
+        return message;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request body serialization at growing history lengths, against the Gson tree
+ * approach the client used before the byte-buffer serializer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatRequestSerializerBenchmark {
+    private static final String MODEL = "gpt-4o-mini";
+    private static final Gson GSON = new Gson();
+
+    @Param({"10", "100", "1000"})
+    public int turns;
+
+    private List<Map<String, Object>> messages;
+
+    @Setup
+    public void setUp() {
+        messages = BenchmarkData.conversation(turns);
+    }
+
+    @Benchmark
+    public byte[] serializer() {
+        return ChatRequestSerializer.serialize(MODEL, messages, false);
+    }
+
+    @Benchmark
+    public byte[] gsonTree() {
+        JsonObject request = new JsonObject();
+        request.addProperty("model", MODEL);
+        JsonArray array = new JsonArray();
+        for (Map<String, Object> msg : messages) {
+            JsonObject message = new JsonObject();
+            message.addProperty("role", (String) msg.get("role"));
+            message.addProperty("content", (String) msg.get("content"));
+            array.add(message);
+        }
+        request.add("messages", array);
+        return GSON.toJson(request).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.service;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response parsing for short and long completions, against building the full
+ * Gson tree and walking it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatResponseParserBenchmark {
+    @Param({"10", "100", "1000"})
+    public int lines;
+
+    private byte[] body;
+    private String chunk;
+
+    @Setup
+    public void setUp() {
+        body = BenchmarkData.completionResponse(BenchmarkData.thoughtsResponse(lines));
+        chunk = "{\"id\":\"chatcmpl-bench\",\"object\":\"chat.completion.chunk\",\"choices\":[{\"index\":0,"
+                + "\"delta\":{\"content\":\" sömnproblemen\"},\"finish_reason\":null}]}";
+    }
+
+    @Benchmark
+    public ChatCompletion streamingReader() {
+        return ChatResponseParser.parse(body);
+    }
+
+    @Benchmark
+    public ChatCompletion gsonTree() {
+        JsonObject response = JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject();
+        String content = response.getAsJsonArray("choices").get(0).getAsJsonObject()
+                .getAsJsonObject("message").get("content").getAsString();
+        JsonObject usage = response.getAsJsonObject("usage");
+        return new ChatCompletion(content, usage.get("prompt_tokens").getAsInt(), usage.get("completion_tokens").getAsInt());
+    }
+
+    @Benchmark
+    public ChatCompletion chunk() {
+        return ChatResponseParser.parseChunk(chunk);
+    }
+}
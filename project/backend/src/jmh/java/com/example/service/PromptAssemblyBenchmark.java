@@ -0,0 +1,57 @@
+package com.example.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The string work done around each turn: timing analysis for the plan prompt,
+ * parsing extracted thoughts and formatting them back into the reply prompt.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromptAssemblyBenchmark {
+    @Param({"10", "100", "1000"})
+    public int turns;
+
+    private ConversationLog.Snapshot history;
+    private String thoughtsResponse;
+    private List<String> thoughts;
+
+    @Setup
+    public void setUp() {
+        history = BenchmarkData.log(turns);
+        thoughtsResponse = BenchmarkData.thoughtsResponse(turns);
+        thoughts = BenchmarkData.thoughts(turns);
+    }
+
+    @Benchmark
+    public String timingAnalysis() {
+        return PsykologenService.buildTimingAnalysis(history);
+    }
+
+    @Benchmark
+    public List<String> parseThoughts() {
+        return PsykologenService.parseThoughtLines(thoughtsResponse);
+    }
+
+    @Benchmark
+    public String formatThoughts() {
+        return PsykologenService.formatThoughts(thoughts);
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.loadtest;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Drives simulated patients through {@code /start}, {@code /message} x turns and
+ * {@code /profile}/{@code /plan} against a running backend, then reports throughput,
+ * latency percentiles per endpoint, the upstream LLM calls the run caused and the share of
+ * their prompt tokens served from the provider's prompt cache.
+ *
+ * <pre>
+ * --base-url http://localhost:8080 --patients 50 --turns 5 --think-ms 0 --response-mode pipelined
+ * --analysis-mode fused --stream (use the SSE endpoints) --background-wait-ms 5000
+ * </pre>
+ */
+public class LoadGenerator {
+    private static final Gson GSON = new Gson();
+    private static final Pattern LLM_COUNT = Pattern.compile(
+            "^psykologen_llm_request_seconds_count\\{([^}]*)} ([0-9.eE+-]+)$", Pattern.MULTILINE);
+    private static final Pattern LLM_TOKENS = Pattern.compile(
+            "^psykologen_llm_tokens_total\\{[^}]*type=\"(\\w+)\"[^}]*} ([0-9.eE+-]+)$", Pattern.MULTILINE);
+    private static final String TOKENS = "tokens/";
+    private static final Pattern LABEL = Pattern.compile("(\\w+)=\"([^\"]*)\"");
+    private static final String[] PATIENT_LINES = {
+            "Jag har haft svårt att sova de senaste veckorna.",
+            "Det är mest jobbet, jag hinner inte med och känner mig otillräcklig.",
+            "Hemma är det också spänt, min sambo tycker att jag jobbar för mycket.",
+            "Jag har nog alltid velat klara allt själv.",
+            "När jag var liten fick jag ta hand om mina småsyskon.",
+    };
+
+    private final LoadTestOptions options;
+    private final String api;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final Map<String, List<Long>> latencies = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> failures = new ConcurrentHashMap<>();
+    private final AtomicLong completedPatients = new AtomicLong();
+
+    public LoadGenerator(LoadTestOptions options) {
+        this.options = options;
+        this.api = options.get("base-url", "http://localhost:8080") + "/api/psykologen";
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadGenerator(LoadTestOptions.parse(args)).run();
+    }
+
+    public void run() throws Exception {
+        int patients = options.getInt("patients", 20);
+        int turns = options.getInt("turns", 5);
+        Map<String, Double> upstreamBefore = scrapeUpstreamCalls();
+
+        System.out.printf("Running %d patients x %d turns against %s%n", patients, turns, api);
+        CountDownLatch done = new CountDownLatch(patients);
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            for (int i = 0; i < patients; i++) {
+                executor.submit(() -> {
+                    try {
+                        runPatient(turns);
+                        completedPatients.incrementAndGet();
+                    } catch (Exception e) {
+                        failures.computeIfAbsent("patient", k -> new AtomicLong()).incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+        } finally {
+            executor.shutdown();
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        // Profile and plan updates finish in the background after the last reply
+        Thread.sleep(options.getLong("background-wait-ms", 5000));
+        Map<String, Double> upstreamAfter = scrapeUpstreamCalls();
+
+        report(elapsedSeconds, upstreamBefore, upstreamAfter);
+    }
+
+    private void runPatient(int turns) throws Exception {
+        String sessionId = startSession();
+        String responseMode = options.get("response-mode", null);
+        for (int turn = 0; turn < turns; turn++) {
+            think();
+            JsonObject body = new JsonObject();
+            body.addProperty("sessionId", sessionId);
+            body.addProperty("message", PATIENT_LINES[turn % PATIENT_LINES.length]);
+            if (responseMode != null) {
+                body.addProperty("responseMode", responseMode);
+            }
+            if (options.getBoolean("stream")) {
+                post("message/stream", "/message/stream", GSON.toJson(body));
+            } else {
+                post("message", "/message", GSON.toJson(body));
+            }
+        }
+        String query = "?sessionId=" + URLEncoder.encode(sessionId, StandardCharsets.UTF_8);
+        get("profile", "/profile" + query);
+        get("plan", "/plan" + query);
+    }
+
+    private String startSession() throws Exception {
+        JsonObject start = new JsonObject();
+        String analysisMode = options.get("analysis-mode", null);
+        if (analysisMode != null) {
+            start.addProperty("analysisMode", analysisMode);
+        }
+        if (options.getBoolean("stream")) {
+            String events = post("start/stream", "/start/stream", GSON.toJson(start));
+            Matcher matcher = Pattern.compile("\"sessionId\"\\s*:\\s*\"([^\"]+)\"").matcher(events);
+            if (!matcher.find()) {
+                throw new IllegalStateException("No session event in stream");
+            }
+            return matcher.group(1);
+        }
+        String body = post("start", "/start", GSON.toJson(start));
+        return JsonParser.parseString(body).getAsJsonObject().get("sessionId").getAsString();
+    }
+
+    private String post(String endpoint, String path, String json) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(api + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+        return send(endpoint, request);
+    }
+
+    private String get(String endpoint, String path) throws Exception {
+        return send(endpoint, HttpRequest.newBuilder(URI.create(api + path)).GET().build());
+    }
+
+    private String send(String endpoint, HttpRequest request) throws Exception {
+        long start = System.nanoTime();
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        long elapsed = System.nanoTime() - start;
+        if (response.statusCode() != 200 || response.body().contains("event:error")) {
+            failures.computeIfAbsent(endpoint, k -> new AtomicLong()).incrementAndGet();
+            throw new IllegalStateException(endpoint + " failed with " + response.statusCode());
+        }
+        latencies.computeIfAbsent(endpoint, k -> Collections.synchronizedList(new ArrayList<>())).add(elapsed);
+        return response.body();
+    }
+
+    private void think() throws InterruptedException {
+        long thinkMs = options.getLong("think-ms", 0);
+        if (thinkMs > 0) {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(thinkMs / 2, thinkMs * 3 / 2 + 1));
+        }
+    }
+
+    /**
+     * Upstream call counts by purpose and token counts by type ({@code tokens/<type>}) from the
+     * backend's Prometheus endpoint, empty if unavailable.
+     */
+    private Map<String, Double> scrapeUpstreamCalls() {
+        Map<String, Double> counts = new TreeMap<>();
+        String base = options.get("base-url", "http://localhost:8080");
+        try {
+            HttpResponse<String> response = httpClient.send(
+                    HttpRequest.newBuilder(URI.create(base + "/actuator/prometheus")).GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            Matcher matcher = LLM_COUNT.matcher(response.body());
+            while (matcher.find()) {
+                Matcher label = LABEL.matcher(matcher.group(1));
+                String purpose = "unknown";
+                String outcome = "unknown";
+                while (label.find()) {
+                    if (label.group(1).equals("purpose")) {
+                        purpose = label.group(2);
+                    } else if (label.group(1).equals("outcome")) {
+                        outcome = label.group(2);
+                    }
+                }
+                counts.merge(purpose + "/" + outcome, Double.parseDouble(matcher.group(2)), Double::sum);
+            }
+            Matcher tokens = LLM_TOKENS.matcher(response.body());
+            while (tokens.find()) {
+                counts.merge(TOKENS + tokens.group(1), Double.parseDouble(tokens.group(2)), Double::sum);
+            }
+        } catch (Exception e) {
+            // Backend without the Prometheus endpoint, upstream counts are left out
+        }
+        return counts;
+    }
+
+    private void report(double elapsedSeconds, Map<String, Double> upstreamBefore, Map<String, Double> upstreamAfter) {
+        long requests = latencies.values().stream().mapToLong(List::size).sum();
+        System.out.printf("%nCompleted %d patients in %.1f s: %.2f patients/s, %.1f requests/s%n",
+                completedPatients.get(), elapsedSeconds, completedPatients.get() / elapsedSeconds, requests / elapsedSeconds);
+
+        System.out.printf("%n%-16s %8s %8s %10s %10s %10s%n", "endpoint", "ok", "failed", "p50 ms", "p99 ms", "max ms");
+        for (String endpoint : new TreeMap<>(latencies).keySet()) {
+            List<Long> samples = new ArrayList<>(latencies.get(endpoint));
+            Collections.sort(samples);
+            System.out.printf("%-16s %8d %8d %10.1f %10.1f %10.1f%n", endpoint, samples.size(),
+                    failures.getOrDefault(endpoint, new AtomicLong()).get(),
+                    percentile(samples, 0.50), percentile(samples, 0.99), samples.get(samples.size() - 1) / 1e6);
+        }
+        failures.forEach((endpoint, count) -> {
+            if (!latencies.containsKey(endpoint)) {
+                System.out.printf("%-16s %8d %8d%n", endpoint, 0, count.get());
+            }
+        });
+
+        if (upstreamAfter.isEmpty()) {
+            System.out.println("\nUpstream calls: /actuator/prometheus not reachable");
+            return;
+        }
+        System.out.printf("%n%-24s %8s %10s%n", "upstream purpose/outcome", "calls", "per turn");
+        long turns = latencies.getOrDefault("message", latencies.getOrDefault("message/stream", List.of())).size();
+        double total = 0;
+        for (Map.Entry<String, Double> entry : upstreamAfter.entrySet()) {
+            if (entry.getKey().startsWith(TOKENS)) {
+                continue;
+            }
+            double calls = entry.getValue() - upstreamBefore.getOrDefault(entry.getKey(), 0.0);
+            if (calls > 0) {
+                total += calls;
+                System.out.printf("%-24s %8.0f %10.2f%n", entry.getKey(), calls, turns > 0 ? calls / turns : 0.0);
+            }
+        }
+        System.out.printf("%-24s %8.0f %10.2f%n", "total", total, turns > 0 ? total / turns : 0.0);
+
+        double prompt = upstreamAfter.getOrDefault(TOKENS + "prompt", 0.0) - upstreamBefore.getOrDefault(TOKENS + "prompt", 0.0);
+        double cached = upstreamAfter.getOrDefault(TOKENS + "cached", 0.0) - upstreamBefore.getOrDefault(TOKENS + "cached", 0.0);
+        System.out.printf("%nPrompt tokens %.0f, cached %.0f, prompt cache hit ratio %.1f%%%n",
+                prompt, cached, prompt > 0 ? 100 * cached / prompt : 0.0);
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1))) / 1e6;
+    }
+}
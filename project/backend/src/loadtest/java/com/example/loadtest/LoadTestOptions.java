@@ -0,0 +1,48 @@
+package com.example.loadtest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** {@code --name value} command line options, with {@code --flag} alone meaning {@code true}. */
+public class LoadTestOptions {
+    private final Map<String, String> values = new HashMap<>();
+
+    public static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            String name = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                options.values.put(name, args[++i]);
+            } else {
+                options.values.put(name, "true");
+            }
+        }
+        return options;
+    }
+
+    public String get(String name, String fallback) {
+        return values.getOrDefault(name, fallback);
+    }
+
+    public int getInt(String name, int fallback) {
+        String value = values.get(name);
+        return value != null ? Integer.parseInt(value) : fallback;
+    }
+
+    public long getLong(String name, long fallback) {
+        String value = values.get(name);
+        return value != null ? Long.parseLong(value) : fallback;
+    }
+
+    public double getDouble(String name, double fallback) {
+        String value = values.get(name);
+        return value != null ? Double.parseDouble(value) : fallback;
+    }
+
+    public boolean getBoolean(String name) {
+        return Boolean.parseBoolean(values.get(name));
+    }
+}
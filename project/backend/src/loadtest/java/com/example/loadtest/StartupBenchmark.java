@@ -0,0 +1,280 @@
+package com.example.loadtest;
+
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Starts the backend as a child process in each startup variant and reports how long it takes
+ * until Spring reports it started, until {@code /actuator/health} answers and until the first
+ * {@code /start} and {@code /message} have been answered, against an in-process
+ * {@link StubOpenAIServer}. Variants whose artifacts are missing are skipped. A native image at
+ * {@code --native} is timed if present, but that variant has not been built or verified here.
+ * <p>
+ * With {@code --train} it makes the class-data-sharing training run instead: the extracted jar
+ * runs with AOT and {@code -XX:ArchiveClassesAtExit}, serves a few short conversations and is
+ * stopped, which writes the archive.
+ *
+ * <pre>
+ * --fat-jar target/psykologen-1.0-SNAPSHOT.jar --app-dir target/startup --archive target/startup/psykologen.jsa
+ * --runs 3 --train
+ * </pre>
+ */
+public class StartupBenchmark {
+    private static final Pattern STARTED = Pattern.compile("Started PsykologenApplication in ([0-9.]+) seconds");
+    private static final Duration START_TIMEOUT = Duration.ofSeconds(120);
+
+    private final LoadTestOptions options;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(2))
+            .build();
+    private final String java = ProcessHandle.current().info().command().orElse("java");
+    private String upstreamUrl;
+
+    private record Variant(String name, List<String> command) {
+    }
+
+    private record Timing(double startedSeconds, long healthMs, long startMs, long messageMs) {
+    }
+
+    public StartupBenchmark(LoadTestOptions options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new StartupBenchmark(LoadTestOptions.parse(args)).run();
+    }
+
+    private void run() throws Exception {
+        HttpServer stub = new StubOpenAIServer(LoadTestOptions.parse(new String[] {
+                "--port", String.valueOf(freePort()), "--latency-ms", "20", "--latency-dist", "fixed"})).start();
+        upstreamUrl = "http://127.0.0.1:" + stub.getAddress().getPort() + "/v1/chat/completions";
+        try {
+            if (options.getBoolean("train")) {
+                train();
+            } else {
+                report();
+            }
+        } finally {
+            stub.stop(0);
+        }
+    }
+
+    private void train() throws Exception {
+        Path archive = Path.of(options.get("archive", "target/startup/psykologen.jsa"));
+        Files.deleteIfExists(archive);
+        List<String> command = new ArrayList<>(List.of(java,
+                "-XX:ArchiveClassesAtExit=" + archive.toAbsolutePath(),
+                "-Dspring.aot.enabled=true",
+                "-jar", extractedJar().toString()));
+        int port = freePort();
+        Process process = launch(command, port);
+        try {
+            readOutput(process, new CompletableFuture<>());
+            awaitHealthy(process, port, System.nanoTime());
+            for (int i = 0; i < options.getInt("conversations", 3); i++) {
+                String sessionId = startSession(port);
+                for (int turn = 0; turn < 3; turn++) {
+                    message(port, sessionId, "Jag har svårt att sova, jobbet stressar mig. (" + turn + ")");
+                }
+                get(port, "/conversation?sessionId=" + sessionId);
+                get(port, "/profile?sessionId=" + sessionId);
+                get(port, "/plan?sessionId=" + sessionId);
+            }
+            get(port, "/metrics/turns");
+        } finally {
+            stop(process);
+        }
+        if (!Files.exists(archive)) {
+            throw new IllegalStateException("Training run did not write " + archive);
+        }
+        System.out.printf("Wrote CDS archive %s (%.1f MB)%n", archive, Files.size(archive) / 1e6);
+    }
+
+    private void report() throws Exception {
+        List<Variant> variants = new ArrayList<>();
+        Path fatJar = Path.of(options.get("fat-jar", "target/psykologen-1.0-SNAPSHOT.jar"));
+        Path archive = Path.of(options.get("archive", "target/startup/psykologen.jsa"));
+        Path nativeImage = Path.of(options.get("native", "target/psykologen"));
+        if (Files.exists(fatJar)) {
+            variants.add(new Variant("fat jar", List.of(java, "-jar", fatJar.toAbsolutePath().toString())));
+        }
+        if (Files.exists(extractedJar())) {
+            String jar = extractedJar().toString();
+            variants.add(new Variant("extracted", List.of(java, "-jar", jar)));
+            variants.add(new Variant("extracted + AOT", List.of(java, "-Dspring.aot.enabled=true", "-jar", jar)));
+            if (Files.exists(archive)) {
+                String shared = "-XX:SharedArchiveFile=" + archive.toAbsolutePath();
+                variants.add(new Variant("extracted + CDS", List.of(java, shared, "-jar", jar)));
+                variants.add(new Variant("extracted + AOT + CDS",
+                        List.of(java, shared, "-Dspring.aot.enabled=true", "-jar", jar)));
+            }
+        }
+        if (Files.isExecutable(nativeImage)) {
+            variants.add(new Variant("native image", List.of(nativeImage.toAbsolutePath().toString())));
+        }
+
+        int runs = options.getInt("runs", 3);
+        System.out.printf("Startup over %d runs per variant (medians), upstream stub at %s%n%n", runs, upstreamUrl);
+        System.out.printf("%-24s %12s %12s %14s %16s%n", "variant", "started s", "health ms", "first /start", "first /message");
+        for (Variant variant : variants) {
+            List<Timing> timings = new ArrayList<>();
+            for (int i = 0; i < runs; i++) {
+                timings.add(measure(variant));
+            }
+            System.out.printf("%-24s %12.2f %12d %14d %16d%n", variant.name(),
+                    median(timings.stream().map(Timing::startedSeconds).toList()),
+                    median(timings.stream().map(Timing::healthMs).toList()),
+                    median(timings.stream().map(Timing::startMs).toList()),
+                    median(timings.stream().map(Timing::messageMs).toList()));
+        }
+    }
+
+    private Timing measure(Variant variant) throws Exception {
+        int port = freePort();
+        long launched = System.nanoTime();
+        Process process = launch(variant.command(), port);
+        try {
+            CompletableFuture<Double> started = new CompletableFuture<>();
+            readOutput(process, started);
+            long healthMs = awaitHealthy(process, port, launched);
+            String sessionId = startSession(port);
+            long startMs = elapsedMs(launched);
+            message(port, sessionId, "Hej, jag har haft en tung vecka.");
+            long messageMs = elapsedMs(launched);
+            double startedSeconds = started.get(10, TimeUnit.SECONDS);
+            return new Timing(startedSeconds, healthMs, startMs, messageMs);
+        } finally {
+            stop(process);
+        }
+    }
+
+    private Process launch(List<String> command, int port) throws IOException {
+        List<String> full = new ArrayList<>(command);
+        full.add("--server.port=" + port);
+        full.add("--openai.api.key=stub");
+        full.add("--openai.api.url=" + upstreamUrl);
+        // Keeps the document journal of each run out of the working tree
+        Path workDir = Files.createTempDirectory("psykologen-startup");
+        return new ProcessBuilder(full)
+                .directory(workDir.toFile())
+                .redirectErrorStream(true)
+                .start();
+    }
+
+    private void readOutput(Process process, CompletableFuture<Double> started) {
+        Thread reader = new Thread(() -> {
+            try (BufferedReader lines = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    Matcher matcher = STARTED.matcher(line);
+                    if (matcher.find()) {
+                        started.complete(Double.parseDouble(matcher.group(1)));
+                    }
+                }
+            } catch (IOException e) {
+                started.completeExceptionally(e);
+            }
+        }, "startup-output");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private long awaitHealthy(Process process, int port, long launched) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/actuator/health"))
+                .timeout(Duration.ofSeconds(2))
+                .build();
+        while (elapsedMs(launched) < START_TIMEOUT.toMillis()) {
+            try {
+                if (httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return elapsedMs(launched);
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Backend exited with " + process.exitValue() + " before it became healthy");
+            }
+            Thread.sleep(5);
+        }
+        throw new IllegalStateException("Backend did not become healthy within " + START_TIMEOUT);
+    }
+
+    private String startSession(int port) throws Exception {
+        String body = post(port, "/start", "{}");
+        return JsonParser.parseString(body).getAsJsonObject().get("sessionId").getAsString();
+    }
+
+    private void message(int port, String sessionId, String text) throws Exception {
+        post(port, "/message", "{\"sessionId\":\"" + sessionId + "\",\"message\":\"" + text + "\"}");
+    }
+
+    private String post(int port, String path, String json) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/api/psykologen" + path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(path + " answered " + response.statusCode() + ": " + response.body());
+        }
+        return response.body();
+    }
+
+    private void get(int port, String path) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/api/psykologen" + path))
+                .timeout(Duration.ofSeconds(30))
+                .build();
+        httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+    }
+
+    /** Stops the app the way an orchestrator would, so shutdown hooks (and the CDS dump) run. */
+    private static void stop(Process process) throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(60, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+        }
+    }
+
+    private Path extractedJar() {
+        Path appDir = Path.of(options.get("app-dir", "target/startup"));
+        return appDir.resolve(options.get("jar", "psykologen-1.0-SNAPSHOT.jar")).toAbsolutePath();
+    }
+
+    private static long elapsedMs(long since) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - since);
+    }
+
+    private static <T extends Comparable<T>> T median(List<T> values) {
+        List<T> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.example.loadtest;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * OpenAI-compatible chat completions stub for load tests. Answers
+ * {@code POST /v1/chat/completions} with generated text after a configurable latency (a JSON
+ * document delta when {@code response_format} is set), streams when the request asks for it
+ * and can inject errors. Prompt caching is simulated like the provider's automatic prefix cache:
+ * the longest run of leading messages already seen in an earlier request is reported as
+ * {@code cached_tokens}, in 128-token steps once it reaches {@code --cache-min-tokens}.
+ * {@code GET /stats} returns the call counters.
+ *
+ * <pre>
+ * --port 9099 --latency-ms 800 --latency-dist lognormal --latency-sigma 0.5
+ * --completion-tokens 120 --token-delay-ms 10 --error-rate 0.02 --error-status 429
+ * --cache-min-tokens 1024
+ * </pre>
+ */
+public class StubOpenAIServer {
+    private static final Gson GSON = new Gson();
+    private static final String[] WORDS = {
+            "jag", "förstår", "att", "det", "känns", "tungt", "berätta", "mer", "om", "hur",
+            "du", "upplever", "situationen", "just", "nu", "och", "vad", "som", "händer", "i", "kroppen"
+    };
+
+    private final LoadTestOptions options;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong streamed = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong promptTokens = new AtomicLong();
+    private final AtomicLong completionTokens = new AtomicLong();
+    private final AtomicLong cachedTokens = new AtomicLong();
+    private final Map<String, Boolean> seenPrefixes = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > 100_000;
+        }
+    };
+
+    public StubOpenAIServer(LoadTestOptions options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws IOException {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        HttpServer server = new StubOpenAIServer(options).start();
+        System.out.println("Stub chat completions on http://localhost:" + server.getAddress().getPort()
+                + "/v1/chat/completions");
+    }
+
+    public HttpServer start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(options.getInt("port", 9099)), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/v1/chat/completions", this::handleCompletion);
+        server.createContext("/stats", this::handleStats);
+        server.start();
+        return server;
+    }
+
+    private void handleCompletion(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "application/json", "{\"error\":{\"message\":\"method not allowed\"}}");
+                return;
+            }
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            JsonObject request = JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject();
+            JsonElement streamFlag = request.get("stream");
+            boolean stream = streamFlag != null && streamFlag.getAsBoolean();
+            boolean json = request.has("response_format");
+            requests.incrementAndGet();
+
+            sleep(sampleLatency());
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (random.nextDouble() < options.getDouble("error-rate", 0.0)) {
+                errors.incrementAndGet();
+                int status = options.getInt("error-status", 500);
+                if (status == 429) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                }
+                send(exchange, status, "application/json",
+                        "{\"error\":{\"message\":\"injected error\",\"type\":\"stub\"}}");
+                return;
+            }
+
+            int prompt = Math.max(1, body.length / 4);
+            int completion = options.getInt("completion-tokens", 60);
+            int cached = Math.min(prompt, cachedPrefixTokens(request.getAsJsonArray("messages")));
+            promptTokens.addAndGet(prompt);
+            completionTokens.addAndGet(completion);
+            cachedTokens.addAndGet(cached);
+
+            String usage = "\"usage\":{\"prompt_tokens\":" + prompt + ",\"completion_tokens\":" + completion
+                    + ",\"total_tokens\":" + (prompt + completion)
+                    + ",\"prompt_tokens_details\":{\"cached_tokens\":" + cached + "}}";
+            if (stream) {
+                streamed.incrementAndGet();
+                sendStream(exchange, completion, usage);
+            } else {
+                String content = json ? generateDelta(completion) : generateText(completion);
+                send(exchange, 200, "application/json", completionJson(content, usage));
+            }
+        } catch (RuntimeException e) {
+            send(exchange, 400, "application/json", "{\"error\":{\"message\":" + GSON.toJson(String.valueOf(e.getMessage())) + "}}");
+        }
+    }
+
+    /** Tokens in the longest leading run of messages seen before; every prefix of this request is remembered. */
+    private int cachedPrefixTokens(JsonArray messages) {
+        if (messages == null) {
+            return 0;
+        }
+        int chars = 0;
+        int cachedChars = 0;
+        StringBuilder key = new StringBuilder();
+        synchronized (seenPrefixes) {
+            for (JsonElement message : messages) {
+                String json = message.toString();
+                chars += json.length();
+                key.append(json.hashCode()).append(':').append(chars).append('/');
+                if (seenPrefixes.put(key.toString(), Boolean.TRUE) != null) {
+                    cachedChars = chars;
+                }
+            }
+        }
+        int tokens = cachedChars / 4;
+        return tokens < options.getInt("cache-min-tokens", 1024) ? 0 : tokens / 128 * 128;
+    }
+
+    private void sendStream(HttpExchange exchange, int completion, String usage) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        long tokenDelay = options.getLong("token-delay-ms", 0);
+        OutputStream out = exchange.getResponseBody();
+        for (int i = 0; i < completion; i++) {
+            String piece = (i == 0 ? "" : " ") + WORDS[ThreadLocalRandom.current().nextInt(WORDS.length)];
+            out.write(("data: {\"object\":\"chat.completion.chunk\",\"choices\":[{\"index\":0,\"delta\":{\"content\":"
+                    + GSON.toJson(piece) + "},\"finish_reason\":null}]}\n\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            sleep(tokenDelay);
+        }
+        out.write(("data: {\"object\":\"chat.completion.chunk\",\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"stop\"}],"
+                + usage + "}\n\n"
+                + "data: [DONE]\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("requests", requests.get());
+            stats.put("streamed", streamed.get());
+            stats.put("errors", errors.get());
+            stats.put("promptTokens", promptTokens.get());
+            stats.put("completionTokens", completionTokens.get());
+            stats.put("cachedTokens", cachedTokens.get());
+            send(exchange, 200, "application/json", GSON.toJson(stats));
+        }
+    }
+
+    private long sampleLatency() {
+        double median = options.getDouble("latency-ms", 500);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return switch (options.get("latency-dist", "lognormal")) {
+            case "fixed" -> (long) median;
+            case "uniform" -> (long) (random.nextDouble() * 2 * median);
+            case "lognormal" -> (long) (median * Math.exp(options.getDouble("latency-sigma", 0.5) * random.nextGaussian()));
+            default -> throw new IllegalArgumentException("Unknown latency distribution: " + options.get("latency-dist", ""));
+        };
+    }
+
+    private static String generateText(int tokens) {
+        StringBuilder text = new StringBuilder("- ");
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < tokens; i++) {
+            if (i > 0) {
+                text.append(i % 15 == 0 ? "\n- " : " ");
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * A profile/plan delta adding one short item; unknown sections end up in the document's last one.
+     * The same object carries {@code thoughts}, {@code profile} and {@code plan} so it also serves
+     * as a fused turn analysis.
+     */
+    private static String generateDelta(int tokens) {
+        String text = generateText(Math.min(tokens, 15)).substring(2);
+        String delta = "{\"add\":[{\"section\":\"Övriga Noteringar\",\"text\":" + GSON.toJson(text) + "}],"
+                + "\"update\":[],\"remove\":[]}";
+        return delta.substring(0, delta.length() - 1) + ",\"thoughts\":[" + GSON.toJson(text) + "],"
+                + "\"profile\":" + delta + ",\"plan\":" + delta + "}";
+    }
+
+    private static String completionJson(String content, String usage) {
+        return "{\"id\":\"chatcmpl-stub\",\"object\":\"chat.completion\",\"model\":\"stub\",\"choices\":[{\"index\":0,"
+                + "\"message\":{\"role\":\"assistant\",\"content\":" + GSON.toJson(content) + "},\"finish_reason\":\"stop\"}],"
+                + usage + "}";
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.example;
+
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+/**
+ * Reflection that a native image cannot see on its own: Gson reads and writes these records
+ * through their fields and canonical constructor.
+ */
+public class PsykologenRuntimeHints implements RuntimeHintsRegistrar {
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        for (String type : new String[] {"com.example.service.LlmTrace$Call", "com.example.service.DocumentJournal$Entry"}) {
+            hints.reflection().registerType(TypeReference.of(type),
+                    MemberCategory.DECLARED_FIELDS,
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                    MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+    }
+}
@@ -1,109 +1,378 @@
 package com.example.controller;
 
+import com.example.service.ChatMessage;
+import com.example.service.CircuitOpenException;
+import com.example.service.ConversationLog;
+import com.example.service.ConversationSession;
+import com.example.service.DocumentType;
+import com.example.service.LimiterRejectedException;
 import com.example.service.PsykologenService;
+import com.example.service.SessionNotFoundException;
+import com.example.service.VersionedDocument;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 @RestController
 @RequestMapping("/api/psykologen")
 @CrossOrigin(origins = "*")
 public class PsykologenController {
     
+    private static final long STREAM_TIMEOUT_MS = 180_000;
+    
     @Autowired
     private PsykologenService psykologenService;
     
+    @Value("${psykologen.poll.timeout:PT25S}")
+    private Duration pollTimeout;
+    
     @PostMapping("/start")
-    public ResponseEntity<Map<String, Object>> startConversation() {
-        Map<String, Object> response = new HashMap<>();
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> startConversation(
+            @RequestBody(required = false) Map<String, String> request) {
         try {
-            String opening = psykologenService.startConversation();
-            response.put("success", true);
-            response.put("message", opening);
-            response.put("role", "erik");
-            return ResponseEntity.ok(response);
+            ConversationSession session = psykologenService.createSession(analysisMode(request));
+            return psykologenService.startConversation(session.getId())
+                    .thenApply(opening -> {
+                        Map<String, Object> response = new HashMap<>();
+                        response.put("success", true);
+                        response.put("sessionId", session.getId());
+                        response.put("message", opening);
+                        response.put("role", "erik");
+                        response.put("analysisMode", session.getAnalysisMode().tag());
+                        return ResponseEntity.ok(response);
+                    })
+                    .exceptionally(this::errorResponse);
         } catch (Exception e) {
-            response.put("success", false);
-            response.put("error", e.getMessage());
-            return ResponseEntity.badRequest().body(response);
+            return CompletableFuture.completedFuture(errorResponse(e));
         }
     }
     
     @PostMapping("/message")
-    public ResponseEntity<Map<String, Object>> sendMessage(@RequestBody Map<String, String> request) {
-        Map<String, Object> response = new HashMap<>();
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> sendMessage(@RequestBody Map<String, String> request) {
         try {
+            String sessionId = request.get("sessionId");
             String userInput = request.get("message");
             if (userInput == null || userInput.trim().isEmpty()) {
+                Map<String, Object> response = new HashMap<>();
                 response.put("success", false);
                 response.put("error", "Message cannot be empty");
-                return ResponseEntity.badRequest().body(response);
+                return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(response));
             }
             
-            String erikResponse = psykologenService.processMessage(userInput);
-            response.put("success", true);
-            response.put("message", erikResponse);
-            response.put("role", "erik");
-            
-            if (erikResponse.contains("KLAR FÖR SKRIVNING")) {
-                response.put("sessionComplete", true);
-            }
-            
-            return ResponseEntity.ok(response);
+            return psykologenService.processMessage(sessionId, userInput, request.get("responseMode"), null)
+                    .thenApply(erikResponse -> ResponseEntity.ok(messageResponse(sessionId, erikResponse)))
+                    .exceptionally(this::errorResponse);
         } catch (Exception e) {
-            response.put("success", false);
-            response.put("error", e.getMessage());
-            return ResponseEntity.badRequest().body(response);
+            return CompletableFuture.completedFuture(errorResponse(e));
         }
     }
     
-    @GetMapping("/conversation")
-    public ResponseEntity<Map<String, Object>> getConversation() {
-        Map<String, Object> response = new HashMap<>();
+    @PostMapping(value = "/start/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter startConversationStream(@RequestBody(required = false) Map<String, String> request) {
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
         try {
-            List<Map<String, Object>> conversation = psykologenService.getConversation();
-            response.put("success", true);
-            response.put("conversation", conversation);
-            return ResponseEntity.ok(response);
+            ConversationSession session = psykologenService.createSession(analysisMode(request));
+            emitter.send(SseEmitter.event().name("session").data(Map.of("sessionId", session.getId())));
+            psykologenService.startConversation(session.getId(), deltaSender(emitter))
+                    .whenComplete((opening, error) -> {
+                        if (error != null) {
+                            sendError(emitter, error);
+                            return;
+                        }
+                        Map<String, Object> response = new HashMap<>();
+                        response.put("success", true);
+                        response.put("sessionId", session.getId());
+                        response.put("message", opening);
+                        response.put("role", "erik");
+                        response.put("analysisMode", session.getAnalysisMode().tag());
+                        sendDone(emitter, response);
+                    });
         } catch (Exception e) {
-            response.put("success", false);
-            response.put("error", e.getMessage());
-            return ResponseEntity.badRequest().body(response);
+            sendError(emitter, e);
         }
+        return emitter;
     }
     
-    @GetMapping("/profile")
-    public ResponseEntity<Map<String, Object>> getProfile() {
-        Map<String, Object> response = new HashMap<>();
+    @PostMapping(value = "/message/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter sendMessageStream(@RequestBody Map<String, String> request) {
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        String sessionId = request.get("sessionId");
+        String userInput = request.get("message");
+        if (userInput == null || userInput.trim().isEmpty()) {
+            sendError(emitter, new IllegalArgumentException("Message cannot be empty"));
+            return emitter;
+        }
+        
         try {
-            String profile = psykologenService.getProfile();
-            response.put("success", true);
-            response.put("profile", profile);
-            return ResponseEntity.ok(response);
+            psykologenService.processMessage(sessionId, userInput, request.get("responseMode"), deltaSender(emitter))
+                    .whenComplete((erikResponse, error) -> {
+                        if (error != null) {
+                            sendError(emitter, error);
+                        } else {
+                            sendDone(emitter, messageResponse(sessionId, erikResponse));
+                        }
+                    });
         } catch (Exception e) {
-            response.put("success", false);
-            response.put("error", e.getMessage());
-            return ResponseEntity.badRequest().body(response);
+            sendError(emitter, e);
+        }
+        return emitter;
+    }
+    
+    @GetMapping("/metrics/turns")
+    public ResponseEntity<Map<String, Object>> getTurnMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("defaultMode", psykologenService.getDefaultResponseMode().tag());
+        response.put("defaultAnalysisMode", psykologenService.getDefaultAnalysisMode().tag());
+        response.put("turns", psykologenService.getTurnMetrics());
+        return ResponseEntity.ok(response);
+    }
+    
+    @GetMapping("/metrics/background")
+    public ResponseEntity<Map<String, Object>> getBackgroundMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("background", psykologenService.getBackgroundStats());
+        return ResponseEntity.ok(response);
+    }
+    
+    @GetMapping("/metrics/upstream")
+    public ResponseEntity<Map<String, Object>> getUpstreamMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("upstream", psykologenService.getUpstreamStats());
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * Full history, or only the messages after the {@code after} cursor. With {@code since} the
+     * request waits until there is a message newer than that cursor or the poll timeout passes
+     * (304). The ETag is the sequence number of the newest message.
+     */
+    @GetMapping("/conversation")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> getConversation(
+            @RequestParam(required = false) String sessionId,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Long since,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        ConversationSession session = psykologenService.findSession(sessionId);
+        if (session == null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("conversation", List.of());
+            response.put("cursor", 0);
+            return CompletableFuture.completedFuture(ResponseEntity.ok(response));
         }
+        if (since == null) {
+            return CompletableFuture.completedFuture(conversationEntity(session, after, ifNoneMatch));
+        }
+        return session.awaitMessageAfter(since)
+                .completeOnTimeout(null, pollTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .thenApply(changed -> session.getLastSeq() > since
+                        ? conversationEntity(session, since, null)
+                        : notModified(session.getLastSeq()));
     }
     
+    /**
+     * Current profile with its version as ETag. With {@code since} the request waits until the
+     * profile is newer than that version or the poll timeout passes (304).
+     */
+    @GetMapping("/profile")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> getProfile(
+            @RequestParam(required = false) String sessionId,
+            @RequestParam(required = false) Long since,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return documentResponse(sessionId, DocumentType.PROFILE, since, ifNoneMatch);
+    }
+    
+    /** Current plan, with the same ETag and {@code since} handling as {@link #getProfile}. */
     @GetMapping("/plan")
-    public ResponseEntity<Map<String, Object>> getPlan() {
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> getPlan(
+            @RequestParam(required = false) String sessionId,
+            @RequestParam(required = false) Long since,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return documentResponse(sessionId, DocumentType.PLAN, since, ifNoneMatch);
+    }
+    
+    private CompletableFuture<ResponseEntity<Map<String, Object>>> documentResponse(
+            String sessionId, DocumentType type, Long since, String ifNoneMatch) {
+        if (since == null) {
+            return CompletableFuture.completedFuture(
+                    documentEntity(type, psykologenService.getDocument(sessionId, type), ifNoneMatch));
+        }
+        return psykologenService.awaitDocument(sessionId, type, since)
+                .completeOnTimeout(null, pollTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .thenApply(changed -> {
+                    VersionedDocument current = psykologenService.getDocument(sessionId, type);
+                    long version = current == null ? 0 : current.version();
+                    return version > since ? documentEntity(type, current, null) : notModified(version);
+                });
+    }
+    
+    private ResponseEntity<Map<String, Object>> documentEntity(DocumentType type, VersionedDocument document,
+                                                               String ifNoneMatch) {
+        long version = document == null ? 0 : document.version();
+        if (etagMatches(ifNoneMatch, version)) {
+            return notModified(version);
+        }
+        boolean empty = document == null || document.content().isEmpty();
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put(type.tag(), empty ? PsykologenService.emptyDocument(type) : document.content());
+        response.put("version", version);
+        return ResponseEntity.ok().eTag(etag(version)).cacheControl(CacheControl.noCache()).body(response);
+    }
+    
+    private ResponseEntity<Map<String, Object>> conversationEntity(ConversationSession session, Long after,
+                                                                   String ifNoneMatch) {
+        ConversationLog.Snapshot history = session.getHistory();
+        long cursor = history.lastSeq();
+        if (etagMatches(ifNoneMatch, cursor)) {
+            return notModified(cursor);
+        }
+        // From the start the system message comes first, as the client expects
+        List<Map<String, Object>> conversation = new ArrayList<>();
+        long afterSeq = after == null ? 0 : after;
+        if (afterSeq <= 0) {
+            ChatMessage system = session.getSystemMessage();
+            conversation.add(Map.of("role", system.role(), "content", system.content()));
+        }
+        for (ChatMessage message : history.after(afterSeq)) {
+            conversation.add(messageJson(message));
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("conversation", conversation);
+        response.put("cursor", cursor);
+        response.put("usage", session.getUsage());
+        return ResponseEntity.ok().eTag(etag(cursor)).cacheControl(CacheControl.noCache()).body(response);
+    }
+    
+    private static Map<String, Object> messageJson(ChatMessage message) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("role", message.role());
+        json.put("content", message.content());
+        json.put("timestamp", message.timestamp());
+        json.put("session_time", message.sessionTime());
+        json.put("seq", message.seq());
+        return json;
+    }
+    
+    private static ResponseEntity<Map<String, Object>> notModified(long version) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(etag(version))
+                .cacheControl(CacheControl.noCache())
+                .build();
+    }
+    
+    private static String etag(long version) {
+        return "\"" + version + "\"";
+    }
+    
+    private static boolean etagMatches(String ifNoneMatch, long version) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String etag = etag(version);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.equals("*") || trimmed.equals(etag) || trimmed.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static String analysisMode(Map<String, String> request) {
+        return request == null ? null : request.get("analysisMode");
+    }
+    
+    private Map<String, Object> messageResponse(String sessionId, String erikResponse) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("sessionId", sessionId);
+        response.put("message", erikResponse);
+        response.put("role", "erik");
+        
+        if (erikResponse.contains("KLAR FÖR SKRIVNING")) {
+            response.put("sessionComplete", true);
+        }
+        return response;
+    }
+    
+    private ResponseEntity<Map<String, Object>> errorResponse(Throwable error) {
+        Throwable cause = unwrap(error);
         Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("error", cause.getMessage());
+        if (cause instanceof SessionNotFoundException) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        }
+        if (cause instanceof CircuitOpenException || cause instanceof LimiterRejectedException) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
+        }
+        if (cause instanceof TimeoutException) {
+            response.put("error", "Upstream LLM did not answer in time");
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(response);
+        }
+        return ResponseEntity.badRequest().body(response);
+    }
+    
+    private static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+    
+    private Consumer<String> deltaSender(SseEmitter emitter) {
+        return text -> {
+            try {
+                emitter.send(SseEmitter.event().name("delta").data(Map.of("text", text)));
+            } catch (IOException | IllegalStateException e) {
+                // Client went away; the reply is still completed and stored
+            }
+        };
+    }
+    
+    private void sendDone(SseEmitter emitter, Map<String, Object> response) {
         try {
-            String plan = psykologenService.getPlan();
-            response.put("success", true);
-            response.put("plan", plan);
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            response.put("success", false);
-            response.put("error", e.getMessage());
-            return ResponseEntity.badRequest().body(response);
+            emitter.send(SseEmitter.event().name("done").data(response));
+            emitter.complete();
+        } catch (IOException | IllegalStateException e) {
+            // Client went away
+        }
+    }
+    
+    private void sendError(SseEmitter emitter, Throwable error) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("error", unwrap(error).getMessage());
+        try {
+            emitter.send(SseEmitter.event().name("error").data(response));
+            emitter.complete();
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(error);
         }
     }
     
-}
\ No newline at end of file
+}
@@ -0,0 +1,17 @@
+package com.example.service;
+
+/** How the thoughts, profile and plan are derived from each turn; fixed per session so modes can be compared. */
+public enum AnalysisMode {
+    /** One call for the thoughts and one each for the profile and plan updates. */
+    SEPARATE,
+    /** A single structured call after Erik's reply returns thoughts, profile and plan changes together. */
+    FUSED;
+
+    public String tag() {
+        return name().toLowerCase();
+    }
+
+    public static AnalysisMode parse(String value, AnalysisMode fallback) {
+        return ModeParser.parseMode(AnalysisMode.class, value, fallback);
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Runs background document updates (profile, plan, ...) with a bounded number of concurrent
+ * upstream calls. Updates are keyed by session and document: while one is queued or running,
+ * newer turns for the same key are folded into a single follow-up update instead of piling up,
+ * and updates for the same key never run concurrently, so they cannot overwrite each other.
+ * <p>
+ * Every turn reaches exactly one update. A running update is deliberately allowed to finish and
+ * write its result rather than being cancelled when newer turns arrive: it is the only update
+ * that sees its own turns, and its result is merged into the latest document, so the follow-up
+ * builds on it instead of replacing it.
+ */
+@Component
+public class BackgroundUpdateScheduler {
+
+    @Value("${psykologen.background.max-concurrent:8}")
+    private int maxConcurrent;
+
+    @Value("${psykologen.background.max-queued:1000}")
+    private int maxQueued;
+
+    private final Map<String, Slot> slots = new HashMap<>();
+    private final Deque<String> ready = new ArrayDeque<>();
+    private int inFlight = 0;
+
+    private long submitted = 0;
+    private long coalesced = 0;
+    private long dropped = 0;
+    private long completed = 0;
+    private long failed = 0;
+
+    public BackgroundUpdateScheduler(MeterRegistry registry) {
+        Gauge.builder("psykologen.background.queue_depth", this, BackgroundUpdateScheduler::getQueueDepth)
+                .description("Background updates waiting for a free slot")
+                .register(registry);
+        Gauge.builder("psykologen.background.in_flight", this, BackgroundUpdateScheduler::getInFlight)
+                .description("Background updates currently running")
+                .register(registry);
+        FunctionCounter.builder("psykologen.background.coalesced", this, BackgroundUpdateScheduler::getCoalesced)
+                .description("Turns folded into an already pending background update")
+                .register(registry);
+        FunctionCounter.builder("psykologen.background.dropped", this, BackgroundUpdateScheduler::getDropped)
+                .description("Background updates dropped because the queue was full")
+                .register(registry);
+    }
+
+    private static class Slot {
+        final String sessionId;
+        final List<Exchange> exchanges = new ArrayList<>();
+        Function<List<Exchange>, CompletableFuture<?>> task;
+        boolean queued;
+        boolean running;
+
+        Slot(String sessionId) {
+            this.sessionId = sessionId;
+        }
+    }
+
+    /**
+     * Schedules {@code task} for the given session document. If an update for the same key is
+     * already waiting, its exchanges are merged and only the latest task runs, once, with all of them.
+     */
+    public void submit(String sessionId, String document, Exchange exchange,
+                       Function<List<Exchange>, CompletableFuture<?>> task) {
+        String key = sessionId + "/" + document;
+        synchronized (this) {
+            submitted++;
+            Slot slot = slots.get(key);
+            if (slot == null) {
+                if (slots.size() >= maxQueued) {
+                    dropped++;
+                    return;
+                }
+                slot = new Slot(sessionId);
+                slots.put(key, slot);
+            }
+            if (slot.task != null) {
+                coalesced++;
+            }
+            slot.exchanges.add(exchange);
+            slot.task = task;
+            if (!slot.queued && !slot.running) {
+                slot.queued = true;
+                ready.add(key);
+            }
+        }
+        dispatch();
+    }
+
+    /** Forgets all waiting updates for a session; a running update is allowed to finish. */
+    public synchronized void discard(String sessionId) {
+        slots.entrySet().removeIf(entry -> {
+            Slot slot = entry.getValue();
+            if (!slot.sessionId.equals(sessionId)) {
+                return false;
+            }
+            slot.task = null;
+            slot.exchanges.clear();
+            return !slot.running;
+        });
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queueDepth", ready.size());
+        stats.put("inFlight", inFlight);
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("submitted", submitted);
+        stats.put("coalesced", coalesced);
+        stats.put("dropped", dropped);
+        stats.put("completed", completed);
+        stats.put("failed", failed);
+        return stats;
+    }
+
+    public synchronized int getQueueDepth() {
+        return ready.size();
+    }
+
+    private synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private synchronized long getCoalesced() {
+        return coalesced;
+    }
+
+    private synchronized long getDropped() {
+        return dropped;
+    }
+
+    private void dispatch() {
+        List<Runnable> toStart = new ArrayList<>();
+        synchronized (this) {
+            while (inFlight < maxConcurrent && !ready.isEmpty()) {
+                String key = ready.poll();
+                Slot slot = slots.get(key);
+                if (slot == null || slot.task == null) {
+                    continue;
+                }
+                slot.queued = false;
+                slot.running = true;
+                inFlight++;
+
+                Function<List<Exchange>, CompletableFuture<?>> task = slot.task;
+                List<Exchange> batch = new ArrayList<>(slot.exchanges);
+                slot.task = null;
+                slot.exchanges.clear();
+                toStart.add(() -> start(key, task, batch));
+            }
+        }
+        toStart.forEach(Runnable::run);
+    }
+
+    private void start(String key, Function<List<Exchange>, CompletableFuture<?>> task, List<Exchange> batch) {
+        CompletableFuture<?> future;
+        try {
+            future = task.apply(batch);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((result, error) -> finish(key, error == null));
+    }
+
+    private void finish(String key, boolean success) {
+        synchronized (this) {
+            inFlight--;
+            if (success) {
+                completed++;
+            } else {
+                failed++;
+            }
+            Slot slot = slots.get(key);
+            if (slot != null) {
+                slot.running = false;
+                if (slot.task != null) {
+                    slot.queued = true;
+                    ready.add(key);
+                } else {
+                    slots.remove(key);
+                }
+            }
+        }
+        dispatch();
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.service;
+
+/** Scheduling class of an upstream call in the {@link OutboundLimiter}. */
+public enum CallPriority {
+    /** A patient is waiting for the result. */
+    INTERACTIVE,
+    /** Profile, plan, analysis and summary updates and opening pool refills; deferred or shed under pressure. */
+    BACKGROUND;
+
+    public String tag() {
+        return name().toLowerCase();
+    }
+
+    public static CallPriority of(CallPurpose purpose) {
+        return switch (purpose) {
+            case OPENING, THOUGHTS, REPLY -> INTERACTIVE;
+            case PROFILE, PLAN, ANALYSIS, SUMMARY -> BACKGROUND;
+        };
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.service;
+
+/** Why an upstream LLM call is made; used to tag metrics and to route calls through {@link ModelRouter}. */
+public enum CallPurpose {
+    OPENING,
+    THOUGHTS,
+    REPLY,
+    PROFILE,
+    PLAN,
+    ANALYSIS,
+    SUMMARY;
+
+    public String tag() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.service;
+
+/**
+ * The parts of a chat-completions response the service uses. {@code cachedTokens} is the share of
+ * {@code promptTokens} the provider served from its prompt cache.
+ */
+public record ChatCompletion(String content, int promptTokens, int completionTokens, int cachedTokens) {
+    public ChatCompletion(String content, int promptTokens, int completionTokens) {
+        this(content, promptTokens, completionTokens, 0);
+    }
+}
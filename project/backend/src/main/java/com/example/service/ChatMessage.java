@@ -0,0 +1,21 @@
+package com.example.service;
+
+import java.util.Map;
+
+/**
+ * One message of a conversation as kept in the {@link ConversationLog}. {@code sessionTime} is
+ * the time since the session started, in milliseconds.
+ */
+public record ChatMessage(long seq, String role, String content, long timestamp, long sessionTime) {
+    public static final String USER = "user";
+    public static final String ASSISTANT = "assistant";
+
+    public boolean isUser() {
+        return USER.equals(role);
+    }
+
+    /** The message as sent upstream, with only role and content. */
+    public Map<String, Object> toRequestMessage() {
+        return Map.of("role", role, "content", content);
+    }
+}
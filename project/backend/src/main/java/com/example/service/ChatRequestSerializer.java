@@ -0,0 +1,200 @@
+package com.example.service;
+
+import com.example.SystemPrompts;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes chat-completions request bodies straight to UTF-8 bytes in a reusable per-thread
+ * buffer, without building a JSON tree or intermediate strings. The constant parts of every
+ * request, the {@code "model"} prefix and the system-prompt message, are encoded once.
+ */
+public final class ChatRequestSerializer {
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] SYSTEM_MESSAGE = encodeMessage("system", SystemPrompts.SYSTEM_PROMPT);
+    private static final byte[] STREAM_SUFFIX =
+            ",\"stream\":true,\"stream_options\":{\"include_usage\":true}}".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SUFFIX = "}".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JSON_OBJECT_SUFFIX =
+            ",\"response_format\":{\"type\":\"json_object\"}}".getBytes(StandardCharsets.US_ASCII);
+
+    private static final Map<String, byte[]> PREFIXES = new ConcurrentHashMap<>();
+    private static final ThreadLocal<ByteSink> BUFFERS = ThreadLocal.withInitial(() -> new ByteSink(INITIAL_BUFFER_SIZE));
+
+    private ChatRequestSerializer() {
+    }
+
+    public static byte[] serialize(String model, List<Map<String, Object>> messages, boolean stream) {
+        return serialize(model, messages, stream, false, 0);
+    }
+
+    /**
+     * With {@code jsonObject} the model is asked for a JSON object response (not combined with
+     * streaming); a positive {@code maxTokens} is sent as {@code max_tokens}.
+     */
+    public static byte[] serialize(String model, List<Map<String, Object>> messages, boolean stream, boolean jsonObject,
+                                   int maxTokens) {
+        ByteSink sink = BUFFERS.get();
+        sink.reset();
+        sink.write(PREFIXES.computeIfAbsent(model, ChatRequestSerializer::encodePrefix));
+        for (int i = 0; i < messages.size(); i++) {
+            if (i > 0) {
+                sink.write((byte) ',');
+            }
+            Map<String, Object> message = messages.get(i);
+            String role = (String) message.get("role");
+            String content = (String) message.get("content");
+            // Cheap for the shared constant (same reference) and for other messages (different length)
+            if ("system".equals(role) && SystemPrompts.SYSTEM_PROMPT.equals(content)) {
+                sink.write(SYSTEM_MESSAGE);
+            } else {
+                writeMessage(sink, role, content);
+            }
+        }
+        sink.write((byte) ']');
+        if (maxTokens > 0) {
+            sink.writeAscii(",\"max_tokens\":" + maxTokens);
+        }
+        sink.write(stream ? STREAM_SUFFIX : jsonObject ? JSON_OBJECT_SUFFIX : SUFFIX);
+
+        // The HTTP client reads the body later on another thread, so hand it an exact-size copy
+        byte[] body = sink.toByteArray();
+        if (sink.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            BUFFERS.remove();
+        }
+        return body;
+    }
+
+    private static byte[] encodePrefix(String model) {
+        ByteSink sink = new ByteSink(64);
+        sink.writeAscii("{\"model\":");
+        writeString(sink, model);
+        sink.writeAscii(",\"messages\":[");
+        return sink.toByteArray();
+    }
+
+    private static byte[] encodeMessage(String role, String content) {
+        ByteSink sink = new ByteSink(content.length() + 64);
+        writeMessage(sink, role, content);
+        return sink.toByteArray();
+    }
+
+    private static void writeMessage(ByteSink sink, String role, String content) {
+        sink.writeAscii("{\"role\":");
+        writeString(sink, role);
+        sink.writeAscii(",\"content\":");
+        writeString(sink, content);
+        sink.write((byte) '}');
+    }
+
+    static void writeString(ByteSink sink, String value) {
+        if (value == null) {
+            sink.writeAscii("null");
+            return;
+        }
+        sink.ensureCapacity(value.length() + 2);
+        sink.write((byte) '"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    sink.write((byte) '\\');
+                    sink.write((byte) c);
+                } else if (c >= 0x20) {
+                    sink.write((byte) c);
+                } else {
+                    writeControl(sink, c);
+                }
+            } else if (c < 0x800) {
+                sink.write((byte) (0xC0 | (c >> 6)));
+                sink.write((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                sink.write((byte) (0xF0 | (codePoint >> 18)));
+                sink.write((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                sink.write((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                sink.write((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate, same replacement as String.getBytes(UTF_8)
+                sink.write((byte) '?');
+            } else {
+                sink.write((byte) (0xE0 | (c >> 12)));
+                sink.write((byte) (0x80 | ((c >> 6) & 0x3F)));
+                sink.write((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        sink.write((byte) '"');
+    }
+
+    private static void writeControl(ByteSink sink, char c) {
+        sink.write((byte) '\\');
+        switch (c) {
+            case '\n' -> sink.write((byte) 'n');
+            case '\r' -> sink.write((byte) 'r');
+            case '\t' -> sink.write((byte) 't');
+            case '\b' -> sink.write((byte) 'b');
+            case '\f' -> sink.write((byte) 'f');
+            default -> {
+                sink.writeAscii("u00");
+                sink.write(HEX[c >> 4]);
+                sink.write(HEX[c & 0xF]);
+            }
+        }
+    }
+
+    /** Minimal growable byte buffer; unlike ByteArrayOutputStream it is unsynchronized. */
+    static final class ByteSink {
+        private byte[] buffer;
+        private int size;
+
+        ByteSink(int initialCapacity) {
+            this.buffer = new byte[initialCapacity];
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        int capacity() {
+            return buffer.length;
+        }
+
+        void ensureCapacity(int additional) {
+            if (size + additional > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+            }
+        }
+
+        void write(byte b) {
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            buffer[size++] = b;
+        }
+
+        void write(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void writeAscii(String ascii) {
+            ensureCapacity(ascii.length());
+            for (int i = 0; i < ascii.length(); i++) {
+                buffer[size++] = (byte) ascii.charAt(i);
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+}
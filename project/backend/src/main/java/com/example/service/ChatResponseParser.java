@@ -0,0 +1,111 @@
+package com.example.service;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pulls {@code choices[0].message.content} (or {@code .delta.content} for stream chunks) and
+ * the {@code usage} counters, including {@code prompt_tokens_details.cached_tokens}, out of a
+ * chat-completions response with a streaming {@link JsonReader}, skipping everything else
+ * instead of materializing a JSON tree.
+ */
+public final class ChatResponseParser {
+
+    private ChatResponseParser() {
+    }
+
+    public static ChatCompletion parse(byte[] body) {
+        return parse(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8), "message");
+    }
+
+    /** Parses one {@code data:} payload of an event stream; content is the delta text, if any. */
+    public static ChatCompletion parseChunk(String data) {
+        return parse(new StringReader(data), "delta");
+    }
+
+    private static ChatCompletion parse(Reader source, String contentHolder) {
+        String content = null;
+        int promptTokens = 0;
+        int completionTokens = 0;
+        int cachedTokens = 0;
+        try (JsonReader reader = new JsonReader(source)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "choices" -> content = readFirstChoice(reader, contentHolder);
+                    case "usage" -> {
+                        if (reader.peek() == JsonToken.NULL) {
+                            reader.nextNull();
+                            break;
+                        }
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            switch (reader.nextName()) {
+                                case "prompt_tokens" -> promptTokens = reader.nextInt();
+                                case "completion_tokens" -> completionTokens = reader.nextInt();
+                                case "prompt_tokens_details" -> cachedTokens = readCachedTokens(reader);
+                                default -> reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    }
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Malformed chat completion response", e);
+        }
+        return new ChatCompletion(content, promptTokens, completionTokens, cachedTokens);
+    }
+
+    private static int readCachedTokens(JsonReader reader) throws IOException {
+        int cachedTokens = 0;
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return cachedTokens;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("cached_tokens") && reader.peek() == JsonToken.NUMBER) {
+                cachedTokens = reader.nextInt();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return cachedTokens;
+    }
+
+    private static String readFirstChoice(JsonReader reader, String contentHolder) throws IOException {
+        String content = null;
+        reader.beginArray();
+        if (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals(contentHolder) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals("content") && reader.peek() == JsonToken.STRING) {
+                            content = reader.nextString();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        while (reader.hasNext()) {
+            reader.skipValue();
+        }
+        reader.endArray();
+        return content;
+    }
+}
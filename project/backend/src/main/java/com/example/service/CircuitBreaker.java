@@ -0,0 +1,143 @@
+package com.example.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Failure-rate circuit breaker in front of the upstream LLM. Closed, it tracks the outcome of
+ * the last {@code window-size} calls and opens once at least {@code minimum-calls} were made and
+ * the failure rate reaches the threshold. Open, calls are rejected until {@code open-duration}
+ * has passed; then a single probe is let through, which closes the breaker on success and opens
+ * it again on failure.
+ */
+@Component
+public class CircuitBreaker {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    @Value("${psykologen.upstream.circuit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${psykologen.upstream.circuit.failure-rate-threshold:0.5}")
+    private double failureRateThreshold;
+
+    @Value("${psykologen.upstream.circuit.minimum-calls:10}")
+    private int minimumCalls;
+
+    @Value("${psykologen.upstream.circuit.open-duration:PT30S}")
+    private Duration openDuration;
+
+    private final boolean[] outcomes;
+    private final Counter rejected;
+    private int next = 0;
+    private int recorded = 0;
+    private int failures = 0;
+    private State state = State.CLOSED;
+    private long openedAt = 0;
+    private boolean probeInFlight = false;
+
+    public CircuitBreaker(@Value("${psykologen.upstream.circuit.window-size:20}") int windowSize,
+                          MeterRegistry registry) {
+        this.outcomes = new boolean[windowSize];
+        Gauge.builder("psykologen.upstream.circuit.state", this, breaker -> breaker.getState().ordinal())
+                .description("Upstream circuit breaker state: 0 closed, 1 open, 2 half-open")
+                .register(registry);
+        this.rejected = Counter.builder("psykologen.upstream.circuit.rejected")
+                .description("Upstream calls rejected while the circuit was open")
+                .register(registry);
+    }
+
+    /** Whether a call may go upstream now. Every permitted call must be followed by one of the {@code on*} methods. */
+    public synchronized boolean tryAcquire() {
+        if (!enabled || state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDuration.toMillis()) {
+            state = State.HALF_OPEN;
+        }
+        if (state == State.HALF_OPEN && !probeInFlight) {
+            probeInFlight = true;
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            reset();
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (recorded >= minimumCalls && (double) failures / recorded >= failureRateThreshold) {
+                open();
+            }
+        }
+    }
+
+    /** The call ended without telling anything about upstream health, e.g. it was cancelled. */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", state.name().toLowerCase());
+        stats.put("recentCalls", recorded);
+        stats.put("recentFailures", failures);
+        stats.put("rejected", (long) rejected.count());
+        return stats;
+    }
+
+    private void record(boolean failure) {
+        if (recorded == outcomes.length) {
+            if (outcomes[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        outcomes[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % outcomes.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        probeInFlight = false;
+    }
+
+    private void reset() {
+        state = State.CLOSED;
+        probeInFlight = false;
+        next = 0;
+        recorded = 0;
+        failures = 0;
+    }
+}
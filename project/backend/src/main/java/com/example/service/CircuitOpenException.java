@@ -0,0 +1,8 @@
+package com.example.service;
+
+/** Thrown instead of calling upstream while the {@link CircuitBreaker} is open. */
+public class CircuitOpenException extends RuntimeException {
+    public CircuitOpenException() {
+        super("Upstream LLM is unavailable, try again shortly");
+    }
+}
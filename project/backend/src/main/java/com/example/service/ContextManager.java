@@ -0,0 +1,92 @@
+package com.example.service;
+
+import com.example.SystemPrompts;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Builds the history part of upstream prompts. The system prompt and the most recent messages
+ * are sent verbatim; older messages are replaced by the session's rolling summary once it
+ * covers them. No message is left out before the summary covers it: when the unsummarized
+ * history grows past the token budget, the next summarization is due at once instead of after
+ * a full batch.
+ */
+@Component
+public class ContextManager {
+    private static final Map<String, Object> SYSTEM_MESSAGE =
+            Map.of("role", "system", "content", SystemPrompts.SYSTEM_PROMPT);
+    private static final int SYSTEM_TOKENS = TokenEstimator.estimate(SYSTEM_MESSAGE);
+
+    @Value("${psykologen.context.token-budget:4000}")
+    private int tokenBudget;
+
+    @Value("${psykologen.context.keep-recent-messages:12}")
+    private int keepRecentMessages;
+
+    @Value("${psykologen.context.summarize-batch:6}")
+    private int summarizeBatch;
+
+    /**
+     * The system prompt, the summary if there is one, and every message the summary does not cover
+     * yet. The last {@code keep-recent-messages} are always included verbatim.
+     */
+    public List<Map<String, Object>> buildContext(ConversationSession session, List<ChatMessage> history) {
+        ContextSummary summary = session.getContextSummary();
+
+        List<Map<String, Object>> context = new ArrayList<>();
+        context.add(SYSTEM_MESSAGE);
+        if (!summary.isEmpty()) {
+            context.add(summaryMessage(summary));
+        }
+        for (ChatMessage message : history.subList(firstVerbatim(summary, history), history.size())) {
+            context.add(message.toRequestMessage());
+        }
+        return context;
+    }
+
+    /**
+     * Messages that have fallen out of the verbatim window but are not yet in the summary, or an
+     * empty list while there are too few of them to be worth a summarization call and the
+     * history still fits the token budget.
+     */
+    public List<ChatMessage> pendingForSummary(ConversationSession session, List<ChatMessage> history) {
+        long throughSeq = session.getContextSummary().throughSeq();
+        int windowStart = Math.max(0, history.size() - keepRecentMessages);
+
+        List<ChatMessage> pending = new ArrayList<>();
+        for (int i = 0; i < windowStart; i++) {
+            if (history.get(i).seq() > throughSeq) {
+                pending.add(history.get(i));
+            }
+        }
+        return pending.size() >= summarizeBatch || (!pending.isEmpty() && exceedsBudget(session, history))
+                ? pending : List.of();
+    }
+
+    private boolean exceedsBudget(ConversationSession session, List<ChatMessage> history) {
+        ContextSummary summary = session.getContextSummary();
+        int tokens = SYSTEM_TOKENS + (summary.isEmpty() ? 0 : TokenEstimator.estimate(summaryMessage(summary)));
+        for (ChatMessage message : history.subList(firstVerbatim(summary, history), history.size())) {
+            tokens += TokenEstimator.estimate(message);
+        }
+        return tokens > tokenBudget;
+    }
+
+    /** Index of the oldest message that is either not yet summarized or within the recent window. */
+    private int firstVerbatim(ContextSummary summary, List<ChatMessage> history) {
+        int first = Math.max(0, history.size() - keepRecentMessages);
+        while (first > 0 && history.get(first - 1).seq() > summary.throughSeq()) {
+            first--;
+        }
+        return first;
+    }
+
+    private static Map<String, Object> summaryMessage(ContextSummary summary) {
+        Map<String, Object> summaryMessage = new HashMap<>();
+        summaryMessage.put("role", "system");
+        summaryMessage.put("content", "SAMMANFATTNING AV TIDIGARE DEL AV SAMTALET:\n" + summary.text());
+        return summaryMessage;
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.service;
+
+/** Rolling summary of the conversation up to and including message {@code throughSeq}. */
+public record ContextSummary(String text, long throughSeq) {
+    public static final ContextSummary EMPTY = new ContextSummary("", 0);
+
+    public boolean isEmpty() {
+        return text.isEmpty();
+    }
+}
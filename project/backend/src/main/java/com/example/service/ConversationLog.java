@@ -0,0 +1,108 @@
+package com.example.service;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Append-only log of a conversation's messages that keeps the newest {@code maxMessages}.
+ * <p>
+ * Reads never lock or copy: {@link #snapshot()} returns an immutable view over the backing array.
+ * The array is only written past its current end, and when it fills up the retained messages are
+ * moved to a new array instead of being shifted, so the slots a snapshot covers never change.
+ * Running {@link ConversationStats} are updated on every append.
+ */
+public final class ConversationLog {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int maxMessages;
+    private ChatMessage[] messages = new ChatMessage[INITIAL_CAPACITY];
+    private int start = 0;
+    private int end = 0;
+    private long nextSeq = 1;
+    private volatile Snapshot snapshot;
+
+    public ConversationLog(int maxMessages) {
+        this.maxMessages = maxMessages;
+        this.snapshot = new Snapshot(messages, 0, 0, 0, ConversationStats.EMPTY);
+    }
+
+    public synchronized ChatMessage append(String role, String content, long timestamp, long sessionTime) {
+        ChatMessage message = new ChatMessage(nextSeq++, role, content, timestamp, sessionTime);
+        if (end == messages.length) {
+            int retained = end - start;
+            ChatMessage[] next = new ChatMessage[Math.max(INITIAL_CAPACITY, retained * 2)];
+            System.arraycopy(messages, start, next, 0, retained);
+            messages = next;
+            start = 0;
+            end = retained;
+        }
+        messages[end++] = message;
+        start = Math.max(start, end - maxMessages);
+        snapshot = new Snapshot(messages, start, end, message.seq(), snapshot.stats().with(message));
+        return message;
+    }
+
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /** The retained messages at one point in time, oldest first, with the statistics as of then. */
+    public static final class Snapshot extends AbstractList<ChatMessage> implements RandomAccess {
+        private final ChatMessage[] messages;
+        private final int from;
+        private final int to;
+        private final long lastSeq;
+        private final ConversationStats stats;
+
+        private Snapshot(ChatMessage[] messages, int from, int to, long lastSeq, ConversationStats stats) {
+            this.messages = messages;
+            this.from = from;
+            this.to = to;
+            this.lastSeq = lastSeq;
+            this.stats = stats;
+        }
+
+        @Override
+        public ChatMessage get(int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return messages[from + index];
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+        /** Sequence number of the newest message, which doubles as the conversation version. */
+        public long lastSeq() {
+            return lastSeq;
+        }
+
+        public ConversationStats stats() {
+            return stats;
+        }
+
+        /** Messages with a sequence number above {@code afterSeq}, found by binary search. */
+        public List<ChatMessage> after(long afterSeq) {
+            int low = 0;
+            int high = size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (get(mid).seq() <= afterSeq) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return subList(low, size());
+        }
+
+        /** The newest {@code count} messages, or all of them if there are fewer. */
+        public List<ChatMessage> last(int count) {
+            return subList(Math.max(0, size() - count), size());
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.service;
+
+import com.example.SystemPrompts;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+public class ConversationSession {
+    private final String id;
+    private final long sessionStartTime;
+    private final AnalysisMode analysisMode;
+    private final ChatMessage systemMessage;
+    private final ConversationLog log;
+    private final ThoughtStore thoughts;
+
+    private volatile long lastAccessTime;
+    private volatile ContextSummary contextSummary = ContextSummary.EMPTY;
+    private CompletableFuture<Void> nextMessage = new CompletableFuture<>();
+    private int conversationCount = 0;
+    private int totalInputTokens = 0;
+    private int totalOutputTokens = 0;
+    private int totalCachedTokens = 0;
+
+    public ConversationSession(String id, int maxHistoryMessages, ThoughtStore thoughts, AnalysisMode analysisMode) {
+        this.id = id;
+        this.sessionStartTime = System.currentTimeMillis();
+        this.lastAccessTime = sessionStartTime;
+        this.analysisMode = analysisMode;
+        this.systemMessage = new ChatMessage(0, "system", SystemPrompts.SYSTEM_PROMPT, sessionStartTime, 0);
+        this.log = new ConversationLog(maxHistoryMessages);
+        this.thoughts = thoughts;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getSessionStartTime() {
+        return sessionStartTime;
+    }
+
+    public AnalysisMode getAnalysisMode() {
+        return analysisMode;
+    }
+
+    public long getLastAccessTime() {
+        return lastAccessTime;
+    }
+
+    public void touch() {
+        lastAccessTime = System.currentTimeMillis();
+    }
+
+    /** Appends a message stamped with the current time and wakes up anyone waiting for it. */
+    public ChatMessage addMessage(String role, String content) {
+        long now = System.currentTimeMillis();
+        ChatMessage message;
+        CompletableFuture<Void> waiting;
+        synchronized (this) {
+            message = log.append(role, content, now, now - sessionStartTime);
+            waiting = nextMessage;
+            nextMessage = new CompletableFuture<>();
+        }
+        waiting.complete(null);
+        return message;
+    }
+
+    /** The retained messages and running statistics; a snapshot that later appends do not change. */
+    public ConversationLog.Snapshot getHistory() {
+        return log.snapshot();
+    }
+
+    /** The system prompt as a message with sequence number 0; it is not part of the log. */
+    public ChatMessage getSystemMessage() {
+        return systemMessage;
+    }
+
+    /** Sequence number of the newest message, which doubles as the conversation version. */
+    public long getLastSeq() {
+        return log.snapshot().lastSeq();
+    }
+
+    /** Completes once a message newer than {@code afterSeq} has been added. */
+    public synchronized CompletableFuture<Void> awaitMessageAfter(long afterSeq) {
+        return getLastSeq() > afterSeq ? CompletableFuture.completedFuture(null) : nextMessage.copy();
+    }
+
+    public ContextSummary getContextSummary() {
+        return contextSummary;
+    }
+
+    public void setContextSummary(ContextSummary contextSummary) {
+        this.contextSummary = contextSummary;
+    }
+
+    /** Stores a thought from the current turn, the number of patient messages so far. */
+    public void addInternalThought(String thought) {
+        thoughts.add(thought, log.snapshot().stats().patientMessages());
+    }
+
+    /** The thoughts to put in this turn's prompts, within the store's token budget. */
+    public List<String> getInternalThoughts() {
+        return thoughts.forPrompt();
+    }
+
+    public synchronized void addTokens(int inputTokens, int outputTokens, int cachedTokens) {
+        totalInputTokens += inputTokens;
+        totalOutputTokens += outputTokens;
+        totalCachedTokens += cachedTokens;
+    }
+
+    public synchronized void incrementConversationCount() {
+        conversationCount++;
+    }
+
+    /**
+     * Turns answered and tokens spent on this session's calls, read together under the session
+     * lock. Cached tokens are the part of the prompt tokens served from the provider's prompt cache.
+     */
+    public synchronized Map<String, Object> getUsage() {
+        Map<String, Object> usage = new LinkedHashMap<>();
+        usage.put("turns", conversationCount);
+        usage.put("promptTokens", totalInputTokens);
+        usage.put("cachedTokens", totalCachedTokens);
+        usage.put("completionTokens", totalOutputTokens);
+        return usage;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.service;
+
+/**
+ * Running statistics of a conversation, updated in O(1) for every message appended to the
+ * {@link ConversationLog} instead of being recomputed from the history.
+ */
+public record ConversationStats(int patientMessages,
+                                int agentMessages,
+                                long patientChars,
+                                long agentChars,
+                                int lastPatientLength,
+                                long responseTimeTotalMs,
+                                int responseTimeCount,
+                                long lastResponseTimeMs,
+                                long lastAgentSessionTime,
+                                long lastSessionTime) {
+    public static final ConversationStats EMPTY = new ConversationStats(0, 0, 0, 0, 0, 0, 0, 0, -1, 0);
+
+    /** These statistics with {@code message} added. Patient response time runs from Erik's previous message. */
+    public ConversationStats with(ChatMessage message) {
+        int length = message.content().length();
+        if (!message.isUser()) {
+            return new ConversationStats(patientMessages, agentMessages + 1, patientChars, agentChars + length,
+                    lastPatientLength, responseTimeTotalMs, responseTimeCount, lastResponseTimeMs,
+                    message.sessionTime(), message.sessionTime());
+        }
+        boolean answersAgent = lastAgentSessionTime >= 0;
+        long responseTime = answersAgent ? Math.max(0, message.sessionTime() - lastAgentSessionTime) : lastResponseTimeMs;
+        return new ConversationStats(patientMessages + 1, agentMessages, patientChars + length, agentChars,
+                length, responseTimeTotalMs + (answersAgent ? responseTime : 0),
+                responseTimeCount + (answersAgent ? 1 : 0), responseTime,
+                -1, message.sessionTime());
+    }
+
+    public double averagePatientLength() {
+        return patientMessages == 0 ? 0 : (double) patientChars / patientMessages;
+    }
+
+    public double averageAgentLength() {
+        return agentMessages == 0 ? 0 : (double) agentChars / agentMessages;
+    }
+
+    public double averageResponseTimeMs() {
+        return responseTimeCount == 0 ? 0 : (double) responseTimeTotalMs / responseTimeCount;
+    }
+
+    /** Patient messages per minute of session time so far. */
+    public double turnsPerMinute() {
+        return lastSessionTime <= 0 ? 0 : patientMessages / (lastSessionTime / 60000.0);
+    }
+}
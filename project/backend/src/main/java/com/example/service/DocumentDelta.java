@@ -0,0 +1,100 @@
+package com.example.service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Changes to a {@link SectionedDocument} as returned by the model:
+ * <pre>
+ * {"add": [{"section": "...", "text": "..."}], "update": [{"id": 3, "text": "..."}], "remove": [5]}
+ * </pre>
+ */
+public record DocumentDelta(List<Addition> add, List<Change> update, List<Integer> remove) {
+    public record Addition(String section, String text) {
+    }
+
+    public record Change(int id, String text) {
+    }
+
+    public int size() {
+        return add.size() + update.size() + remove.size();
+    }
+
+    /** Parses the model's JSON, tolerating a code fence around it and missing lists. */
+    public static DocumentDelta parse(String json) {
+        return from(parseObject(json, "Document delta"));
+    }
+
+    /** Reads a delta from an already parsed object, such as the profile or plan part of a {@link TurnAnalysis}. */
+    static DocumentDelta from(JsonObject root) {
+        List<Addition> add = new ArrayList<>();
+        for (JsonElement element : array(root, "add")) {
+            if (element.isJsonObject()) {
+                JsonObject item = element.getAsJsonObject();
+                String text = string(item, "text");
+                if (text != null) {
+                    add.add(new Addition(string(item, "section"), text));
+                }
+            }
+        }
+        List<Change> update = new ArrayList<>();
+        for (JsonElement element : array(root, "update")) {
+            if (element.isJsonObject()) {
+                JsonObject item = element.getAsJsonObject();
+                Integer id = id(item.get("id"));
+                String text = string(item, "text");
+                if (id != null && text != null) {
+                    update.add(new Change(id, text));
+                }
+            }
+        }
+        List<Integer> remove = new ArrayList<>();
+        for (JsonElement element : array(root, "remove")) {
+            Integer id = id(element.isJsonObject() ? element.getAsJsonObject().get("id") : element);
+            if (id != null) {
+                remove.add(id);
+            }
+        }
+        return new DocumentDelta(add, update, remove);
+    }
+
+    /** Parses a JSON object answer from the model, stripping a code fence around it if there is one. */
+    static JsonObject parseObject(String json, String what) {
+        String body = json.trim();
+        if (body.startsWith("```")) {
+            body = body.replaceFirst("^```[a-zA-Z]*", "").replaceFirst("```\\s*$", "").trim();
+        }
+        try {
+            return JsonParser.parseString(body).getAsJsonObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new IllegalStateException(what + " is not a JSON object: " + json, e);
+        }
+    }
+
+    static JsonArray array(JsonObject root, String name) {
+        JsonElement element = root.get(name);
+        return element != null && element.isJsonArray() ? element.getAsJsonArray() : new JsonArray();
+    }
+
+    static String string(JsonObject object, String name) {
+        JsonElement element = object.get(name);
+        return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+    }
+
+    private static Integer id(JsonElement element) {
+        if (element == null || !element.isJsonPrimitive()) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(element.getAsString().replaceAll("[\\[\\]\\s]", ""));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
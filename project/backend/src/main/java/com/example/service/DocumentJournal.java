@@ -0,0 +1,189 @@
+package com.example.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind journal for the {@link DocumentStore}. Writes only record the latest entry per
+ * document in memory; {@link #flush()} appends them as JSON lines from a background thread, so
+ * several updates of the same document between flushes cost one write. On startup the journal
+ * is replayed and compacted to one line per live document, and it is compacted again once
+ * enough lines have been appended since.
+ * <p>
+ * Off unless {@code journal-enabled} is set, since the file holds profile and plan text in the
+ * clear. {@link SessionRegistry} restores a session for every replayed document, so profile and
+ * plan stay readable after a restart; the conversation itself is not journaled.
+ */
+@Component
+public class DocumentJournal {
+    private static final Gson GSON = new Gson();
+
+    /** One journal line. {@code document} is {@code null} for a session removal. */
+    private record Entry(String sessionId, String document, String content, long version, long updatedAt) {
+    }
+
+    @Value("${psykologen.documents.journal-enabled:false}")
+    private boolean enabled;
+
+    @Value("${psykologen.documents.journal-path:sessions/documents.journal}")
+    private Path path;
+
+    @Value("${psykologen.documents.compact-after:10000}")
+    private int compactAfter;
+
+    private final Map<String, Entry> pending = new ConcurrentHashMap<>();
+    private final Object fileLock = new Object();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private long linesSinceCompaction = 0;
+
+    public DocumentJournal(MeterRegistry registry) {
+        Gauge.builder("psykologen.documents.journal.pending", pending, Map::size)
+                .description("Document writes waiting for the next journal flush")
+                .register(registry);
+        FunctionCounter.builder("psykologen.documents.journal.written", written, AtomicLong::get)
+                .description("Journal lines appended")
+                .register(registry);
+        FunctionCounter.builder("psykologen.documents.journal.failures", failures, AtomicLong::get)
+                .description("Journal flushes or compactions that failed")
+                .register(registry);
+    }
+
+    void append(VersionedDocument document) {
+        if (enabled) {
+            pending.put(key(document.sessionId(), document.type().tag()), new Entry(document.sessionId(),
+                    document.type().tag(), document.content(), document.version(), document.updatedAt()));
+        }
+    }
+
+    void appendRemoval(String sessionId) {
+        if (enabled) {
+            for (DocumentType type : DocumentType.values()) {
+                pending.remove(key(sessionId, type.tag()));
+            }
+            pending.put(key(sessionId, null), new Entry(sessionId, null, null, 0, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Appends the pending entries, removals first so a document written after its session was
+     * removed survives replay. Entries that fail to write stay pending unless superseded.
+     *
+     * @return whether the journal has grown enough to be compacted
+     */
+    boolean flush() {
+        if (!enabled || pending.isEmpty()) {
+            return false;
+        }
+        synchronized (fileLock) {
+            List<Entry> batch = new ArrayList<>();
+            for (Map.Entry<String, Entry> entry : pending.entrySet()) {
+                if (pending.remove(entry.getKey(), entry.getValue())) {
+                    batch.add(entry.getValue());
+                }
+            }
+            batch.sort((a, b) -> Boolean.compare(a.document() != null, b.document() != null));
+            try {
+                Files.createDirectories(path.toAbsolutePath().getParent());
+                try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    for (Entry entry : batch) {
+                        writer.write(GSON.toJson(entry));
+                        writer.newLine();
+                    }
+                }
+                written.addAndGet(batch.size());
+                linesSinceCompaction += batch.size();
+            } catch (IOException e) {
+                failures.incrementAndGet();
+                for (Entry entry : batch) {
+                    pending.putIfAbsent(key(entry.sessionId(), entry.document()), entry);
+                }
+            }
+            return linesSinceCompaction >= compactAfter;
+        }
+    }
+
+    /** Rewrites the journal as one line per live document. */
+    void compact(Collection<VersionedDocument> live) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (fileLock) {
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try {
+                Files.createDirectories(path.toAbsolutePath().getParent());
+                try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                    for (VersionedDocument document : live) {
+                        writer.write(GSON.toJson(new Entry(document.sessionId(), document.type().tag(),
+                                document.content(), document.version(), document.updatedAt())));
+                        writer.newLine();
+                    }
+                }
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                linesSinceCompaction = 0;
+            } catch (IOException e) {
+                failures.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Replays the journal in order. A line that cannot be parsed, such as one cut short by a
+     * crash, ends the replay.
+     */
+    void replay(Consumer<VersionedDocument> onWrite, Consumer<String> onRemoval) {
+        if (!enabled || !Files.exists(path)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Entry entry = GSON.fromJson(line, Entry.class);
+                if (entry == null || entry.sessionId() == null) {
+                    break;
+                }
+                if (entry.document() == null) {
+                    onRemoval.accept(entry.sessionId());
+                } else {
+                    onWrite.accept(new VersionedDocument(entry.sessionId(),
+                            DocumentType.valueOf(entry.document().toUpperCase()),
+                            entry.content(), entry.version(), entry.updatedAt()));
+                }
+            }
+        } catch (IOException | JsonParseException | IllegalArgumentException e) {
+            failures.incrementAndGet();
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        flush();
+    }
+
+    private static String key(String sessionId, String document) {
+        return sessionId + "/" + (document == null ? "*" : document);
+    }
+}
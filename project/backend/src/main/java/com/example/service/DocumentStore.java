@@ -0,0 +1,129 @@
+package com.example.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory profile and plan documents keyed by session. Reads are a single lock-free map
+ * lookup of an immutable {@link VersionedDocument}; writes bump the version and are handed to
+ * the {@link DocumentJournal}, which persists them off the request path and replays them here
+ * on startup.
+ */
+@Component
+public class DocumentStore {
+    private record Key(String sessionId, DocumentType type) {
+    }
+
+    private final Map<Key, VersionedDocument> documents = new ConcurrentHashMap<>();
+    private final Map<Key, CompletableFuture<VersionedDocument>> waiters = new ConcurrentHashMap<>();
+    private final DocumentJournal journal;
+
+    public DocumentStore(DocumentJournal journal, MeterRegistry registry) {
+        this.journal = journal;
+        Gauge.builder("psykologen.documents.count", documents, Map::size)
+                .description("Profile and plan documents held in memory")
+                .register(registry);
+    }
+
+    @PostConstruct
+    void restore() {
+        journal.replay(
+                document -> documents.merge(new Key(document.sessionId(), document.type()), document,
+                        (current, replayed) -> replayed.version() >= current.version() ? replayed : current),
+                this::removeFromMemory);
+        journal.compact(List.copyOf(documents.values()));
+    }
+
+    /** Latest version of the document, or {@code null} if it has not been written yet. */
+    public VersionedDocument get(String sessionId, DocumentType type) {
+        return sessionId == null ? null : documents.get(new Key(sessionId, type));
+    }
+
+    public String getContent(String sessionId, DocumentType type) {
+        VersionedDocument document = get(sessionId, type);
+        return document == null ? "" : document.content();
+    }
+
+    /**
+     * Completes with the document once its version is above {@code sinceVersion}, immediately if
+     * it already is. Completes with {@code null} if the session's documents are removed first.
+     */
+    public CompletableFuture<VersionedDocument> awaitNewer(String sessionId, DocumentType type, long sinceVersion) {
+        Key key = new Key(sessionId, type);
+        // Register before checking so a write in between is not missed
+        CompletableFuture<VersionedDocument> change = waiters.computeIfAbsent(key, k -> new CompletableFuture<>());
+        VersionedDocument current = documents.get(key);
+        if (current != null && current.version() > sinceVersion) {
+            return CompletableFuture.completedFuture(current);
+        }
+        return change.copy();
+    }
+
+    public VersionedDocument put(String sessionId, DocumentType type, String content) {
+        Key key = new Key(sessionId, type);
+        VersionedDocument updated = documents.compute(key, (k, current) ->
+                new VersionedDocument(sessionId, type, content,
+                        current == null ? 1 : current.version() + 1, System.currentTimeMillis()));
+        journal.append(updated);
+        CompletableFuture<VersionedDocument> change = waiters.remove(key);
+        if (change != null) {
+            change.complete(updated);
+        }
+        return updated;
+    }
+
+    public void remove(String sessionId) {
+        if (removeFromMemory(sessionId)) {
+            journal.appendRemoval(sessionId);
+        }
+    }
+
+    /** Sessions that have at least one document, such as those restored from the journal. */
+    public Set<String> sessionIds() {
+        return documents.keySet().stream().map(Key::sessionId).collect(Collectors.toSet());
+    }
+
+    /**
+     * Drops documents whose session is no longer active and which have not been written since
+     * {@code cutoff}, such as those written by a background update that finished after its
+     * session was removed.
+     */
+    public void removeStale(Set<String> activeSessions, long cutoff) {
+        documents.values().stream()
+                .filter(document -> !activeSessions.contains(document.sessionId()) && document.updatedAt() < cutoff)
+                .map(VersionedDocument::sessionId)
+                .distinct()
+                .toList()
+                .forEach(this::remove);
+    }
+
+    @Scheduled(fixedDelayString = "${psykologen.documents.flush-interval:PT1S}")
+    public void flushJournal() {
+        if (journal.flush()) {
+            journal.compact(List.copyOf(documents.values()));
+        }
+    }
+
+    private boolean removeFromMemory(String sessionId) {
+        boolean removed = false;
+        for (DocumentType type : DocumentType.values()) {
+            Key key = new Key(sessionId, type);
+            removed |= documents.remove(key) != null;
+            CompletableFuture<VersionedDocument> change = waiters.remove(key);
+            if (change != null) {
+                change.complete(null);
+            }
+        }
+        return removed;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.service;
+
+import java.util.List;
+
+/** The per-session documents maintained by background updates, with their fixed sections. */
+public enum DocumentType {
+    PROFILE("PATIENT-PROFIL", List.of(
+            "Grundläggande Information",
+            "Problem & Utmaningar",
+            "Personlighet & Beteende",
+            "Mål & Drömmar",
+            "Övriga Noteringar")),
+    PLAN("SESSIONSPLAN", List.of(
+            "Identifierade Problem",
+            "Fokusområden",
+            "Terapeutisk Approach",
+            "Nästa Steg",
+            "Sessionsmål",
+            "Anteckningar för Erik"));
+
+    private final String title;
+    private final List<String> sections;
+
+    DocumentType(String title, List<String> sections) {
+        this.title = title;
+        this.sections = sections;
+    }
+
+    public String tag() {
+        return name().toLowerCase();
+    }
+
+    public String title() {
+        return title;
+    }
+
+    public List<String> sections() {
+        return sections;
+    }
+}
@@ -0,0 +1,5 @@
+package com.example.service;
+
+/** One patient message and Erik's reply to it. */
+public record Exchange(String userInput, String agentResponse) {
+}
@@ -0,0 +1,153 @@
+package com.example.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Sends requests to the route's endpoint over HTTP. In record mode every finished call is also
+ * written to the {@link LlmTrace}.
+ */
+@Component
+public class HttpTransport implements LlmTransport {
+    private final HttpClient httpClient;
+
+    @Autowired
+    private LlmTrace trace;
+
+    public HttpTransport(@Value("${openai.connect-timeout:PT5S}") Duration connectTimeout) {
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .build();
+    }
+
+    @Override
+    public CompletableFuture<ChatCompletion> complete(CallPurpose purpose, ModelRoute route, byte[] requestBody,
+                                                      Duration timeout) {
+        HttpRequest request = buildRequest(route, requestBody, false, timeout);
+        long start = System.nanoTime();
+
+        CompletableFuture<HttpResponse<byte[]>> exchange =
+                httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (trace.isRecording()) {
+            exchange.whenComplete((response, error) -> record(purpose, requestBody, start, 0, error,
+                    response == null ? 0 : response.statusCode(),
+                    response == null ? null : new String(response.body(), StandardCharsets.UTF_8)));
+        }
+        return UpstreamResilience.propagateCancellation(exchange.thenApply(response -> {
+            if (response.statusCode() != 200) {
+                throw new OpenAIException(response.statusCode(),
+                        new String(response.body(), StandardCharsets.UTF_8), retryAfter(response.headers()));
+            }
+            return ChatResponseParser.parse(response.body());
+        }), exchange);
+    }
+
+    @Override
+    public CompletableFuture<ChatCompletion> stream(CallPurpose purpose, ModelRoute route, byte[] requestBody,
+                                                    Duration timeout, Consumer<String> onDelta) {
+        HttpRequest request = buildRequest(route, requestBody, true, timeout);
+        long start = System.nanoTime();
+        boolean recording = trace.isRecording();
+        StringBuilder transcript = recording ? new StringBuilder() : null;
+        AtomicLong firstDelta = new AtomicLong();
+        Consumer<String> deltas = !recording ? onDelta : delta -> {
+            firstDelta.compareAndSet(0, System.nanoTime());
+            onDelta.accept(delta);
+        };
+
+        HttpResponse.BodyHandler<ChatCompletion> handler = info -> {
+            if (info.statusCode() != 200) {
+                Duration retryAfter = retryAfter(info.headers());
+                return HttpResponse.BodySubscribers.mapping(
+                        HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8),
+                        body -> {
+                            if (recording) {
+                                transcript.append(body);
+                            }
+                            throw new OpenAIException(info.statusCode(), body, retryAfter);
+                        });
+            }
+            StreamingResponseParser parser = new StreamingResponseParser(deltas, transcript);
+            return HttpResponse.BodySubscribers.fromLineSubscriber(
+                    parser, StreamingResponseParser::result, StandardCharsets.UTF_8, "\n");
+        };
+
+        CompletableFuture<HttpResponse<ChatCompletion>> exchange = httpClient.sendAsync(request, handler);
+        if (recording) {
+            exchange.whenComplete((response, error) -> {
+                Throwable cause = UpstreamResilience.unwrap(error);
+                int status = response != null ? response.statusCode()
+                        : cause instanceof OpenAIException openAIException ? openAIException.getStatusCode() : 0;
+                record(purpose, requestBody, start, firstDelta.get(), status == 0 ? error : null, status,
+                        transcript.toString());
+            });
+        }
+        return UpstreamResilience.propagateCancellation(exchange.thenApply(HttpResponse::body), exchange);
+    }
+
+    private void record(CallPurpose purpose, byte[] requestBody, long start, long firstDelta, Throwable error,
+                        int status, String body) {
+        Throwable cause = UpstreamResilience.unwrap(error);
+        if (cause instanceof CancellationException) {
+            // Lost a hedge or was abandoned; nothing the upstream said
+            return;
+        }
+        long now = System.nanoTime();
+        trace.record(new LlmTrace.Call(LlmTrace.hash(requestBody), purpose.tag(),
+                cause != null ? 0 : status,
+                Duration.ofNanos(now - start).toMillis(),
+                firstDelta == 0 ? 0 : Duration.ofNanos(firstDelta - start).toMillis(),
+                cause != null ? String.valueOf(cause.getMessage()) : body));
+    }
+
+    private HttpRequest buildRequest(ModelRoute route, byte[] requestBody, boolean stream, Duration timeout) {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(route.url())
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .header("Accept", stream ? "text/event-stream" : "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(requestBody));
+        // Local servers usually run without a key; the OpenAI key is never sent to them
+        if (route.apiKey() != null && !route.apiKey().isEmpty()) {
+            request.header("Authorization", "Bearer " + route.apiKey());
+        }
+        return request.build();
+    }
+
+    /** {@code retry-after-ms} (sent by OpenAI) or {@code Retry-After} in seconds or as an HTTP date. */
+    private static Duration retryAfter(HttpHeaders headers) {
+        try {
+            Optional<String> millis = headers.firstValue("retry-after-ms");
+            if (millis.isPresent()) {
+                return Duration.ofMillis((long) Double.parseDouble(millis.get()));
+            }
+            Optional<String> value = headers.firstValue("Retry-After");
+            if (value.isEmpty()) {
+                return null;
+            }
+            if (value.get().chars().allMatch(Character::isDigit)) {
+                return Duration.ofSeconds(Long.parseLong(value.get()));
+            }
+            ZonedDateTime at = ZonedDateTime.parse(value.get(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            Duration delay = Duration.between(ZonedDateTime.now(), at);
+            return delay.isNegative() ? Duration.ZERO : delay;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
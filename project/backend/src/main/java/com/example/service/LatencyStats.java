@@ -0,0 +1,59 @@
+package com.example.service;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class LatencyStats {
+    private final long[] samples;
+    private int next = 0;
+    private long count = 0;
+    private long totalMs = 0;
+    private long maxMs = 0;
+
+    public LatencyStats(int windowSize) {
+        this.samples = new long[windowSize];
+    }
+
+    public synchronized void record(long latencyMs) {
+        samples[next] = latencyMs;
+        next = (next + 1) % samples.length;
+        count++;
+        totalMs += latencyMs;
+        maxMs = Math.max(maxMs, latencyMs);
+    }
+
+    /** Percentile over the current window, or {@code fallbackMs} until it holds {@code minSamples}. */
+    public synchronized long percentile(double quantile, int minSamples, long fallbackMs) {
+        int size = (int) Math.min(count, samples.length);
+        if (size < minSamples) {
+            return fallbackMs;
+        }
+        long[] window = Arrays.copyOf(samples, size);
+        Arrays.sort(window);
+        return percentile(window, quantile);
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        int size = (int) Math.min(count, samples.length);
+        long[] window = Arrays.copyOf(samples, size);
+        Arrays.sort(window);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", count);
+        result.put("meanMs", count == 0 ? 0 : totalMs / count);
+        result.put("maxMs", maxMs);
+        result.put("p50Ms", percentile(window, 0.50));
+        result.put("p95Ms", percentile(window, 0.95));
+        result.put("p99Ms", percentile(window, 0.99));
+        return result;
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
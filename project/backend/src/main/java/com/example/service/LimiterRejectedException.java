@@ -0,0 +1,8 @@
+package com.example.service;
+
+/** Thrown when the {@link OutboundLimiter} sheds a call instead of queueing it any longer. */
+public class LimiterRejectedException extends RuntimeException {
+    public LimiterRejectedException(CallPriority priority, String reason) {
+        super("Upstream call (" + priority.tag() + ") shed: " + reason);
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Micrometer instrumentation for upstream LLM calls, tagged by {@link CallPurpose}:
+ * latency histograms, prompt/cached/completion token counters, error counts and in-flight gauges.
+ */
+@Component
+public class LlmMetrics {
+    private final MeterRegistry registry;
+    private final Map<CallPurpose, AtomicInteger> inFlight = new EnumMap<>(CallPurpose.class);
+
+    public LlmMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (CallPurpose purpose : CallPurpose.values()) {
+            AtomicInteger gauge = new AtomicInteger();
+            inFlight.put(purpose, gauge);
+            Gauge.builder("psykologen.llm.in_flight", gauge, AtomicInteger::get)
+                    .description("Upstream LLM calls currently in flight")
+                    .tag("purpose", purpose.tag())
+                    .register(registry);
+        }
+    }
+
+    public CompletableFuture<ChatCompletion> record(CallPurpose purpose, Supplier<CompletableFuture<ChatCompletion>> call) {
+        AtomicInteger active = inFlight.get(purpose);
+        active.incrementAndGet();
+        Timer.Sample sample = Timer.start(registry);
+
+        CompletableFuture<ChatCompletion> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<ChatCompletion> observed = future.whenComplete((response, error) -> {
+            active.decrementAndGet();
+            boolean cancelled = UpstreamResilience.unwrap(error) instanceof CancellationException;
+            sample.stop(Timer.builder("psykologen.llm.request")
+                    .description("Latency of upstream LLM calls")
+                    .tag("purpose", purpose.tag())
+                    .tag("outcome", error == null ? "success" : cancelled ? "cancelled" : "error")
+                    .publishPercentileHistogram()
+                    .register(registry));
+            if (error == null) {
+                recordTokens(purpose, response);
+            } else if (!cancelled) {
+                recordError(purpose, error);
+            }
+        });
+        return UpstreamResilience.propagateCancellation(observed, future);
+    }
+
+    private void recordTokens(CallPurpose purpose, ChatCompletion response) {
+        tokenCounter(purpose, "prompt").increment(response.promptTokens());
+        tokenCounter(purpose, "completion").increment(response.completionTokens());
+        tokenCounter(purpose, "cached").increment(response.cachedTokens());
+    }
+
+    /** Prompt and cached tokens so far with the prompt cache hit ratio, per purpose and in total. */
+    public Map<String, Object> getPromptCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        double totalPrompt = 0;
+        double totalCached = 0;
+        for (CallPurpose purpose : CallPurpose.values()) {
+            double prompt = tokenCounter(purpose, "prompt").count();
+            double cached = tokenCounter(purpose, "cached").count();
+            if (prompt > 0) {
+                stats.put(purpose.tag(), cacheStats(prompt, cached));
+            }
+            totalPrompt += prompt;
+            totalCached += cached;
+        }
+        stats.put("total", cacheStats(totalPrompt, totalCached));
+        return stats;
+    }
+
+    private static Map<String, Object> cacheStats(double prompt, double cached) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("promptTokens", (long) prompt);
+        stats.put("cachedTokens", (long) cached);
+        stats.put("hitRatio", prompt > 0 ? Math.round(cached / prompt * 1000) / 1000.0 : 0.0);
+        return stats;
+    }
+
+    private Counter tokenCounter(CallPurpose purpose, String type) {
+        return Counter.builder("psykologen.llm.tokens")
+                .description("Tokens reported by the upstream usage block")
+                .tag("purpose", purpose.tag())
+                .tag("type", type)
+                .register(registry);
+    }
+
+    private void recordError(CallPurpose purpose, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        String status = cause instanceof OpenAIException openAIException
+                ? String.valueOf(openAIException.getStatusCode())
+                : cause.getClass().getSimpleName();
+        Counter.builder("psykologen.llm.errors")
+                .description("Failed upstream LLM calls")
+                .tag("purpose", purpose.tag())
+                .tag("status", status)
+                .register(registry)
+                .increment();
+    }
+}
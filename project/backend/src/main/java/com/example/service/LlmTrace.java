@@ -0,0 +1,123 @@
+package com.example.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Trace file of upstream calls for record and replay: one JSON line per call with a hash of the
+ * request body, the purpose, the HTTP status (0 for an I/O failure), the latency, the time to the
+ * first streamed delta and the raw response body. A path ending in {@code .gz} is gzipped; every
+ * line is flushed, so a trace cut short by a crash is still readable up to its last call.
+ */
+@Component
+public class LlmTrace {
+    private static final Gson GSON = new Gson();
+
+    /** One recorded call. {@code firstDeltaMs} is 0 for calls that were not streamed. */
+    public record Call(String hash, String purpose, int status, long latencyMs, long firstDeltaMs, String body) {
+    }
+
+    @Value("${psykologen.transport.mode:live}")
+    private String mode;
+
+    @Value("${psykologen.transport.trace-file:llm-trace.jsonl.gz}")
+    private Path path;
+
+    private Writer writer;
+
+    public TransportMode getMode() {
+        return TransportMode.parse(mode, TransportMode.LIVE);
+    }
+
+    public boolean isRecording() {
+        return getMode() == TransportMode.RECORD;
+    }
+
+    public synchronized void record(Call call) {
+        try {
+            if (writer == null) {
+                if (path.getParent() != null) {
+                    Files.createDirectories(path.getParent());
+                }
+                OutputStream out = Files.newOutputStream(path);
+                if (isGzip()) {
+                    out = new GZIPOutputStream(out, true);
+                }
+                writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            }
+            writer.write(GSON.toJson(call));
+            writer.write('\n');
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write LLM trace " + path, e);
+        }
+    }
+
+    public List<Call> read() {
+        List<Call> calls = new ArrayList<>();
+        try (InputStream file = Files.newInputStream(path);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(
+                     isGzip() ? new GZIPInputStream(file) : file, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    calls.add(GSON.fromJson(line, Call.class));
+                }
+            }
+        } catch (EOFException e) {
+            // Recorded without a clean shutdown; everything up to the last flushed line is there
+        } catch (IOException | JsonParseException e) {
+            throw new IllegalStateException("Could not read LLM trace " + path, e);
+        }
+        return calls;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @PreDestroy
+    synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    /** Identifies a request by its exact body; 128 bits of SHA-256 in hex. */
+    public static String hash(byte[] requestBody) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(requestBody);
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private boolean isGzip() {
+        return path.getFileName().toString().endsWith(".gz");
+    }
+}
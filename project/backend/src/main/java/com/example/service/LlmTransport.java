@@ -0,0 +1,19 @@
+package com.example.service;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Sends one serialized chat-completions request and parses the answer. Routing, retries, the
+ * limiter and metrics are applied on top of it by {@link OpenAIClient}.
+ */
+public interface LlmTransport {
+
+    CompletableFuture<ChatCompletion> complete(CallPurpose purpose, ModelRoute route, byte[] requestBody,
+                                               Duration timeout);
+
+    /** Streams the answer, handing each content delta to {@code onDelta}. */
+    CompletableFuture<ChatCompletion> stream(CallPurpose purpose, ModelRoute route, byte[] requestBody,
+                                             Duration timeout, Consumer<String> onDelta);
+}
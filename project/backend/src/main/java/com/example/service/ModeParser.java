@@ -0,0 +1,28 @@
+package com.example.service;
+
+import java.util.Arrays;
+
+/** Shared parsing of the lower-case mode settings ({@link ResponseMode}, {@link AnalysisMode}, {@link TransportMode}). */
+final class ModeParser {
+
+    private ModeParser() {
+    }
+
+    /**
+     * The constant named by {@code value} in any case, or {@code fallback} for a blank value.
+     * An unknown value is rejected with the accepted ones, e.g. "Unknown response mode 'x',
+     * expected one of [sequential, pipelined]".
+     */
+    static <E extends Enum<E>> E parseMode(Class<E> type, String value, E fallback) {
+        if (value == null || value.isBlank()) {
+            return fallback;
+        }
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            String label = type.getSimpleName().replaceAll("(?<=[a-z])(?=[A-Z])", " ").toLowerCase();
+            throw new IllegalArgumentException("Unknown " + label + " '" + value + "', expected one of "
+                    + Arrays.stream(type.getEnumConstants()).map(mode -> mode.name().toLowerCase()).toList());
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.service;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Where and how the calls of one {@link CallPurpose} are sent. An alternate route points at another
+ * endpoint than {@code openai.api.url}; it gets a single attempt within {@code timeout} and falls
+ * back to the primary endpoint when that fails. On the primary endpoint {@code timeout} caps each
+ * attempt. {@code null} leaves only the purpose's deadline, and {@code maxTokens} of 0 sends no limit.
+ */
+public record ModelRoute(URI url, String apiKey, String model, Duration timeout, int maxTokens, boolean alternate) {
+
+    public Duration attemptTimeout(Duration remaining) {
+        return timeout == null || remaining.compareTo(timeout) <= 0 ? remaining : timeout;
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Routes each {@link CallPurpose} to an endpoint, model, attempt timeout and token limit, read from
+ * {@code psykologen.routes.<purpose>.*} with the {@code openai.*} settings as defaults.
+ * <p>
+ * A purpose with its own {@code url}, typically a small local OpenAI-compatible server for the
+ * background work, is an alternate route: its API key defaults to none rather than the OpenAI key,
+ * and when a call to it fails the call is made again on the primary endpoint and model. After a
+ * failure the alternate route is skipped for {@code psykologen.routes.cooldown}.
+ * <p>
+ * Only the hosted OpenAI API requires {@code openai.api.key}: a deployment whose purposes all go
+ * to keyless local endpoints is configured without it, and its failed calls are not retried on a
+ * primary endpoint that could not accept them.
+ */
+@Component
+public class ModelRouter {
+    private static final String OPENAI_HOST = "api.openai.com";
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${openai.api.key:#{systemProperties['OPENAI_API_KEY']}}")
+    private String apiKey;
+
+    @Value("${openai.api.url:https://api.openai.com/v1/chat/completions}")
+    private URI apiUrl;
+
+    @Value("${openai.model:gpt-4o-mini}")
+    private String model;
+
+    @Value("${psykologen.routes.cooldown:PT30S}")
+    private Duration cooldown;
+
+    private final Map<CallPurpose, ModelRoute> routes = new ConcurrentHashMap<>();
+    private final Map<CallPurpose, Long> skipUntil = new ConcurrentHashMap<>();
+    private final MeterRegistry registry;
+
+    public ModelRouter(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /** Whether every purpose can be called, so that a whole session can run. */
+    public boolean isConfigured() {
+        for (CallPurpose purpose : CallPurpose.values()) {
+            if (!usable(configured(purpose))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Whether a failed call on the purpose's alternate route can be made again on the primary endpoint. */
+    public boolean canFallBack(CallPurpose purpose) {
+        return usable(fallback(purpose));
+    }
+
+    /** The route for {@code purpose}, or its fallback while the alternate route is cooling down. */
+    public ModelRoute route(CallPurpose purpose) {
+        ModelRoute route = configured(purpose);
+        Long until = skipUntil.get(purpose);
+        if (route.alternate() && until != null && System.currentTimeMillis() < until && canFallBack(purpose)) {
+            return fallback(purpose);
+        }
+        return route;
+    }
+
+    /** The primary endpoint and model, keeping the purpose's token limit. */
+    public ModelRoute fallback(CallPurpose purpose) {
+        return new ModelRoute(apiUrl, apiKey, model, null, configured(purpose).maxTokens(), false);
+    }
+
+    /** Called when a call on an alternate route failed and is retried on the primary endpoint. */
+    public void onFallback(CallPurpose purpose) {
+        skipUntil.put(purpose, System.currentTimeMillis() + cooldown.toMillis());
+        Counter.builder("psykologen.routes.fallbacks")
+                .description("Calls on an alternate route that were retried on the primary endpoint")
+                .tag("purpose", purpose.tag())
+                .register(registry)
+                .increment();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (CallPurpose purpose : CallPurpose.values()) {
+            ModelRoute route = configured(purpose);
+            Counter fallbacks = registry.find("psykologen.routes.fallbacks").tag("purpose", purpose.tag()).counter();
+            Map<String, Object> perPurpose = new LinkedHashMap<>();
+            perPurpose.put("endpoint", route.url().getHost() + (route.url().getPort() < 0 ? "" : ":" + route.url().getPort()));
+            perPurpose.put("model", route.model());
+            perPurpose.put("alternate", route.alternate());
+            perPurpose.put("active", route(purpose).alternate() == route.alternate());
+            perPurpose.put("fallbacks", fallbacks == null ? 0L : (long) fallbacks.count());
+            stats.put(purpose.tag(), perPurpose);
+        }
+        return stats;
+    }
+
+    /** The hosted OpenAI API needs a key; other endpoints, such as local servers, may run without one. */
+    private static boolean usable(ModelRoute route) {
+        return (route.apiKey() != null && !route.apiKey().isEmpty()) || !OPENAI_HOST.equals(route.url().getHost());
+    }
+
+    private ModelRoute configured(CallPurpose purpose) {
+        return routes.computeIfAbsent(purpose, key -> {
+            String prefix = "psykologen.routes." + key.tag() + ".";
+            String url = environment.getProperty(prefix + "url");
+            boolean alternate = url != null && !url.isBlank() && !URI.create(url).equals(apiUrl);
+            String timeout = environment.getProperty(prefix + "timeout");
+            return new ModelRoute(
+                    alternate ? URI.create(url) : apiUrl,
+                    environment.getProperty(prefix + "api-key", alternate ? "" : apiKey),
+                    environment.getProperty(prefix + "model", model),
+                    timeout != null ? DurationStyle.detectAndParse(timeout) : null,
+                    environment.getProperty(prefix + "max-tokens", Integer.class, 0),
+                    alternate);
+        });
+    }
+}
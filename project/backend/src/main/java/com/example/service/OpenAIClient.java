@@ -0,0 +1,147 @@
+package com.example.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+@Component
+public class OpenAIClient {
+    @Autowired
+    private ModelRouter router;
+
+    @Autowired
+    private LlmTrace trace;
+
+    @Autowired
+    private HttpTransport httpTransport;
+
+    @Autowired
+    private ReplayTransport replayTransport;
+
+    @Autowired
+    private LlmMetrics llmMetrics;
+
+    @Autowired
+    private UpstreamResilience resilience;
+
+    @Autowired
+    private OutboundLimiter limiter;
+
+    /** Whether calls can be made: every purpose has a usable route, or answers come from a recorded trace. */
+    public boolean isConfigured() {
+        return router.isConfigured() || trace.getMode() == TransportMode.REPLAY;
+    }
+
+    public CompletableFuture<ChatCompletion> complete(CallPurpose purpose, List<Map<String, Object>> conversationMessages) {
+        return complete(purpose, CallPriority.of(purpose), conversationMessages);
+    }
+
+    public CompletableFuture<ChatCompletion> complete(CallPurpose purpose, CallPriority priority,
+                                                  List<Map<String, Object>> conversationMessages) {
+        return routed(purpose, null, (route, onDelta) -> send(purpose, priority, route,
+                ChatRequestSerializer.serialize(route.model(), conversationMessages, false, false, route.maxTokens())));
+    }
+
+    /** Like {@link #complete}, but asks for a JSON object response. */
+    public CompletableFuture<ChatCompletion> completeJson(CallPurpose purpose, List<Map<String, Object>> conversationMessages) {
+        return routed(purpose, null, (route, onDelta) -> send(purpose, CallPriority.of(purpose), route,
+                ChatRequestSerializer.serialize(route.model(), conversationMessages, false, true, route.maxTokens())));
+    }
+
+    private CompletableFuture<ChatCompletion> send(CallPurpose purpose, CallPriority priority, ModelRoute route,
+                                                   byte[] requestBody) {
+        UpstreamResilience.Attempt attempt = (timeout, onDelta) -> limited(priority, purpose, route, () ->
+                llmMetrics.record(purpose, () -> transport().complete(purpose, route, requestBody, route.attemptTimeout(timeout))));
+        return route.alternate()
+                ? resilience.callOnce(purpose, route.timeout(), null, attempt)
+                : resilience.call(purpose, null, attempt);
+    }
+
+    /**
+     * Streams the completion and hands each content delta to {@code onDelta} as it arrives.
+     * Completes with the assembled reply in the same shape as {@link #complete}.
+     */
+    public CompletableFuture<ChatCompletion> stream(CallPurpose purpose, List<Map<String, Object>> conversationMessages,
+                                                Consumer<String> onDelta) {
+        return routed(purpose, onDelta, (route, routeDelta) -> {
+            byte[] requestBody = ChatRequestSerializer.serialize(
+                    route.model(), conversationMessages, true, false, route.maxTokens());
+            UpstreamResilience.Attempt attempt = (timeout, attemptDelta) ->
+                    limited(CallPriority.of(purpose), purpose, route, () -> llmMetrics.record(purpose, () ->
+                            transport().stream(purpose, route, requestBody, route.attemptTimeout(timeout), attemptDelta)));
+            return route.alternate()
+                    ? resilience.callOnce(purpose, route.timeout(), routeDelta, attempt)
+                    : resilience.call(purpose, routeDelta, attempt);
+        });
+    }
+
+    /**
+     * Takes a permit from the {@link OutboundLimiter} for calls to the primary endpoint. Alternate
+     * routes bypass it: their latency says nothing about the primary endpoint, so they must neither
+     * hold its permits nor move its adaptive limit.
+     */
+    private CompletableFuture<ChatCompletion> limited(CallPriority priority, CallPurpose purpose, ModelRoute route,
+                                                      Supplier<CompletableFuture<ChatCompletion>> call) {
+        return route.alternate() ? call.get() : limiter.submit(priority, purpose, call);
+    }
+
+    /**
+     * Sends the call on the purpose's route and, if that is an alternate route and the call fails,
+     * once more on the primary endpoint. A streamed call only falls back before its first delta.
+     */
+    private CompletableFuture<ChatCompletion> routed(CallPurpose purpose, Consumer<String> onDelta,
+                                                     BiFunction<ModelRoute, Consumer<String>, CompletableFuture<ChatCompletion>> call) {
+        ModelRoute route = router.route(purpose);
+        if (!route.alternate()) {
+            return call.apply(route, onDelta);
+        }
+        AtomicBoolean streamed = new AtomicBoolean(false);
+        Consumer<String> tracked = onDelta == null ? null : delta -> {
+            streamed.set(true);
+            onDelta.accept(delta);
+        };
+        CompletableFuture<ChatCompletion> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<ChatCompletion>> current = new AtomicReference<>();
+        CompletableFuture<ChatCompletion> first = call.apply(route, tracked);
+        current.set(first);
+        first.whenComplete((response, error) -> {
+            Throwable cause = UpstreamResilience.unwrap(error);
+            if (error == null) {
+                result.complete(response);
+            } else if (result.isDone() || streamed.get() || cause instanceof CancellationException
+                    || cause instanceof LimiterRejectedException || !router.canFallBack(purpose)) {
+                result.completeExceptionally(cause);
+            } else {
+                router.onFallback(purpose);
+                CompletableFuture<ChatCompletion> second = call.apply(router.fallback(purpose), onDelta);
+                current.set(second);
+                second.whenComplete((fallbackResponse, fallbackError) -> {
+                    if (fallbackError == null) {
+                        result.complete(fallbackResponse);
+                    } else {
+                        result.completeExceptionally(UpstreamResilience.unwrap(fallbackError));
+                    }
+                });
+            }
+        });
+        result.whenComplete((response, error) -> {
+            if (result.isCancelled()) {
+                current.get().cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private LlmTransport transport() {
+        return trace.getMode() == TransportMode.REPLAY ? replayTransport : httpTransport;
+    }
+}
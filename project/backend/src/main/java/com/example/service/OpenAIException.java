@@ -0,0 +1,27 @@
+package com.example.service;
+
+import java.time.Duration;
+
+public class OpenAIException extends RuntimeException {
+    private final int statusCode;
+    private final Duration retryAfter;
+
+    public OpenAIException(int statusCode, String body) {
+        this(statusCode, body, null);
+    }
+
+    public OpenAIException(int statusCode, String body, Duration retryAfter) {
+        super("OpenAI API error: " + statusCode + " " + body);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /** Delay the upstream asked for with {@code Retry-After}, or {@code null}. */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
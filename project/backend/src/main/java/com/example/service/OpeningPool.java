@@ -0,0 +1,180 @@
+package com.example.service;
+
+import com.example.SystemPrompts;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Warm pool of pre-generated opening lines. Every new session starts from the same input
+ * (system prompt plus the opening prompt), so openings can be generated ahead of time and
+ * handed out instantly. The pool is refilled in the background whenever it drops below the
+ * low-water mark, and openings older than the max age are discarded. The scheduled maintenance
+ * only tops the pool up while {@code /start} has been called within the idle cutoff, so an idle
+ * instance makes no upstream calls beyond the initial warm-up.
+ * <p>
+ * The pool only runs against a live upstream. Recording would interleave its background calls
+ * with the turns in the trace, and replaying would hand the pool the recorded openings meant for
+ * {@code /start}, so in either mode every session makes its own opening call.
+ */
+@Component
+public class OpeningPool {
+
+    private record PooledOpening(String text, long createdAt) {
+    }
+
+    @Value("${psykologen.openings.enabled:true}")
+    private boolean enabled;
+
+    @Value("${psykologen.openings.max-size:20}")
+    private int maxSize;
+
+    @Value("${psykologen.openings.low-water:5}")
+    private int lowWater;
+
+    @Value("${psykologen.openings.max-age:PT30M}")
+    private Duration maxAge;
+
+    @Value("${psykologen.openings.max-concurrent-refills:2}")
+    private int maxConcurrentRefills;
+
+    @Value("${psykologen.openings.idle-cutoff:PT10M}")
+    private Duration idleCutoff;
+
+    @Autowired
+    private OpenAIClient openAIClient;
+
+    @Autowired
+    private LlmTrace trace;
+
+    private final ConcurrentLinkedDeque<PooledOpening> pool = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger refillsInFlight = new AtomicInteger();
+    private final AtomicBoolean filling = new AtomicBoolean();
+    private volatile long lastDemand = 0;
+    private final Counter servedFromPool;
+    private final Counter servedLive;
+
+    public OpeningPool(MeterRegistry registry) {
+        Gauge.builder("psykologen.openings.pool_size", size, AtomicInteger::get)
+                .description("Pre-generated openings ready to be served")
+                .register(registry);
+        servedFromPool = Counter.builder("psykologen.openings.served")
+                .description("Session openings by where they came from")
+                .tag("source", "pool")
+                .register(registry);
+        servedLive = Counter.builder("psykologen.openings.served")
+                .description("Session openings by where they came from")
+                .tag("source", "live")
+                .register(registry);
+    }
+
+    /**
+     * Takes the oldest fresh opening from the pool, or empty if the caller has to make a live call.
+     * Serving oldest-first uses every opening before it ages out.
+     */
+    public Optional<String> take() {
+        if (!active()) {
+            return Optional.empty();
+        }
+        lastDemand = System.currentTimeMillis();
+        try {
+            long cutoff = System.currentTimeMillis() - maxAge.toMillis();
+            PooledOpening opening;
+            while ((opening = pool.pollLast()) != null) {
+                size.decrementAndGet();
+                if (opening.createdAt() >= cutoff) {
+                    servedFromPool.increment();
+                    return Optional.of(opening.text());
+                }
+            }
+            servedLive.increment();
+            return Optional.empty();
+        } finally {
+            refill();
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        refill();
+    }
+
+    @Scheduled(fixedDelayString = "${psykologen.openings.maintenance-interval:PT30S}")
+    public void maintain() {
+        long cutoff = System.currentTimeMillis() - maxAge.toMillis();
+        // Oldest openings sit at the tail since fresh ones are added at the head
+        PooledOpening oldest;
+        while ((oldest = pool.peekLast()) != null && oldest.createdAt() < cutoff) {
+            if (pool.removeLastOccurrence(oldest)) {
+                size.decrementAndGet();
+            }
+        }
+        if (System.currentTimeMillis() - lastDemand < idleCutoff.toMillis()) {
+            refill();
+        }
+    }
+
+    private boolean active() {
+        return enabled && trace.getMode() == TransportMode.LIVE;
+    }
+
+    private void refill() {
+        if (!active() || !openAIClient.isConfigured()) {
+            return;
+        }
+        // Start a fill cycle below the low-water mark and keep it going until the pool is full
+        if (size.get() < lowWater) {
+            filling.set(true);
+        }
+        while (filling.get() && size.get() + refillsInFlight.get() < maxSize) {
+            int running = refillsInFlight.get();
+            if (running >= maxConcurrentRefills) {
+                return;
+            }
+            if (refillsInFlight.compareAndSet(running, running + 1)) {
+                generate();
+            }
+        }
+        if (size.get() >= maxSize) {
+            filling.set(false);
+        }
+    }
+
+    private void generate() {
+        List<Map<String, Object>> openingMessages = List.of(
+                Map.of("role", "system", "content", SystemPrompts.SYSTEM_PROMPT),
+                Map.of("role", "user", "content", SystemPrompts.OPENING_PROMPT));
+
+        openAIClient.complete(CallPurpose.OPENING, CallPriority.BACKGROUND, openingMessages).whenComplete((response, error) -> {
+            refillsInFlight.decrementAndGet();
+            String text = error == null ? response.content() : null;
+            if (text == null || text.isBlank()) {
+                // Stop this cycle; the next take() or maintenance run tries again
+                filling.set(false);
+                return;
+            }
+            pool.addFirst(new PooledOpening(text, System.currentTimeMillis()));
+            size.incrementAndGet();
+            refill();
+        });
+    }
+}
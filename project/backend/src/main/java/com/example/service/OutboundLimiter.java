@@ -0,0 +1,257 @@
+package com.example.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Shared concurrency limit for outbound LLM requests to the primary endpoint, adjusted by AIMD:
+ * every success while the limit is in use raises it by about one per limit's worth of calls, while
+ * a 429 or a latency spike (the short-term average of a purpose rising above {@code latency-tolerance}
+ * times its long-term average) cuts it by {@code backoff-ratio}.
+ * <p>
+ * Waiting calls are queued per {@link CallPriority}. Interactive calls are always dispatched
+ * first; background calls may only fill {@code background-share} of the limit, so there is
+ * always headroom for a patient's turn, and are shed once their queue is full or they have
+ * waited longer than {@code background-max-wait}.
+ */
+@Component
+public class OutboundLimiter {
+    private static final double SHORT_ALPHA = 0.2;
+    private static final double LONG_ALPHA = 0.02;
+    private static final long DECREASE_COOLDOWN_NANOS = Duration.ofSeconds(1).toNanos();
+
+    @Value("${psykologen.limiter.enabled:true}")
+    private boolean enabled;
+
+    @Value("${psykologen.limiter.min-limit:2}")
+    private int minLimit;
+
+    @Value("${psykologen.limiter.max-limit:128}")
+    private int maxLimit;
+
+    @Value("${psykologen.limiter.backoff-ratio:0.75}")
+    private double backoffRatio;
+
+    @Value("${psykologen.limiter.latency-tolerance:2.0}")
+    private double latencyTolerance;
+
+    @Value("${psykologen.limiter.background-share:0.75}")
+    private double backgroundShare;
+
+    @Value("${psykologen.limiter.interactive-max-queue:1000}")
+    private int interactiveMaxQueue;
+
+    @Value("${psykologen.limiter.background-max-queue:200}")
+    private int backgroundMaxQueue;
+
+    @Value("${psykologen.limiter.background-max-wait:PT60S}")
+    private Duration backgroundMaxWait;
+
+    private final Map<CallPriority, Deque<Waiter>> queues = new EnumMap<>(CallPriority.class);
+    private final Map<CallPriority, Integer> running = new EnumMap<>(CallPriority.class);
+    private final Map<CallPriority, Counter> shed = new EnumMap<>(CallPriority.class);
+    private final Map<CallPurpose, double[]> latencyAverages = new EnumMap<>(CallPurpose.class);
+    private double limit;
+    private int inFlight = 0;
+    private long lastDecrease = 0;
+
+    public OutboundLimiter(@Value("${psykologen.limiter.initial-limit:16}") int initialLimit, MeterRegistry registry) {
+        this.limit = initialLimit;
+        for (CallPriority priority : CallPriority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+            running.put(priority, 0);
+            Gauge.builder("psykologen.limiter.queue", this, limiter -> limiter.getQueueLength(priority))
+                    .description("Upstream calls waiting for a permit")
+                    .tag("priority", priority.tag())
+                    .register(registry);
+            shed.put(priority, Counter.builder("psykologen.limiter.shed")
+                    .description("Upstream calls rejected by the limiter")
+                    .tag("priority", priority.tag())
+                    .register(registry));
+        }
+        Gauge.builder("psykologen.limiter.limit", this, OutboundLimiter::getLimit)
+                .description("Current adaptive concurrency limit for upstream calls")
+                .register(registry);
+        Gauge.builder("psykologen.limiter.in_flight", this, OutboundLimiter::getInFlight)
+                .description("Upstream calls currently holding a permit")
+                .register(registry);
+    }
+
+    private static final class Waiter {
+        final CallPriority priority;
+        final CallPurpose purpose;
+        final Supplier<CompletableFuture<ChatCompletion>> call;
+        final CompletableFuture<ChatCompletion> result = new CompletableFuture<>();
+        final long enqueuedAt = System.nanoTime();
+
+        Waiter(CallPriority priority, CallPurpose purpose, Supplier<CompletableFuture<ChatCompletion>> call) {
+            this.priority = priority;
+            this.purpose = purpose;
+            this.call = call;
+        }
+    }
+
+    /**
+     * Runs {@code call} once a permit is free. Cancelling the returned future removes a waiting
+     * call from the queue or cancels the running one.
+     */
+    public CompletableFuture<ChatCompletion> submit(CallPriority priority, CallPurpose purpose,
+                                                    Supplier<CompletableFuture<ChatCompletion>> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        Waiter waiter = new Waiter(priority, purpose, call);
+        synchronized (this) {
+            Deque<Waiter> queue = queues.get(priority);
+            int maxQueue = priority == CallPriority.INTERACTIVE ? interactiveMaxQueue : backgroundMaxQueue;
+            if (queue.size() >= maxQueue) {
+                shed.get(priority).increment();
+                return CompletableFuture.failedFuture(new LimiterRejectedException(priority, "queue full"));
+            }
+            queue.add(waiter);
+        }
+        waiter.result.whenComplete((response, error) -> {
+            if (waiter.result.isCancelled()) {
+                synchronized (this) {
+                    queues.get(priority).remove(waiter);
+                }
+            }
+        });
+        dispatch();
+        return waiter.result;
+    }
+
+    /** Whether calls of this priority are currently waiting for a permit. */
+    public synchronized boolean isQueued(CallPriority priority) {
+        return !queues.get(priority).isEmpty();
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("limit", getLimit());
+        stats.put("inFlight", inFlight);
+        for (CallPriority priority : CallPriority.values()) {
+            Map<String, Object> perPriority = new LinkedHashMap<>();
+            perPriority.put("running", running.get(priority));
+            perPriority.put("queued", queues.get(priority).size());
+            perPriority.put("shed", (long) shed.get(priority).count());
+            stats.put(priority.tag(), perPriority);
+        }
+        return stats;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    private synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private synchronized int getQueueLength(CallPriority priority) {
+        return queues.get(priority).size();
+    }
+
+    private void dispatch() {
+        List<Waiter> toStart = new ArrayList<>();
+        List<Waiter> toShed = new ArrayList<>();
+        synchronized (this) {
+            Deque<Waiter> interactive = queues.get(CallPriority.INTERACTIVE);
+            Deque<Waiter> background = queues.get(CallPriority.BACKGROUND);
+            long cutoff = System.nanoTime() - backgroundMaxWait.toNanos();
+            while (!background.isEmpty() && background.peek().enqueuedAt < cutoff) {
+                toShed.add(background.poll());
+            }
+            int backgroundLimit = Math.max(1, (int) (limit * backgroundShare));
+            while (inFlight < (int) limit) {
+                Waiter next = interactive.poll();
+                if (next == null && running.get(CallPriority.BACKGROUND) < backgroundLimit) {
+                    next = background.poll();
+                }
+                if (next == null) {
+                    break;
+                }
+                if (next.result.isDone()) {
+                    continue;
+                }
+                inFlight++;
+                running.merge(next.priority, 1, Integer::sum);
+                toStart.add(next);
+            }
+        }
+        for (Waiter waiter : toShed) {
+            shed.get(waiter.priority).increment();
+            waiter.result.completeExceptionally(new LimiterRejectedException(waiter.priority, "waited too long"));
+        }
+        toStart.forEach(this::start);
+    }
+
+    private void start(Waiter waiter) {
+        long start = System.nanoTime();
+        CompletableFuture<ChatCompletion> call;
+        try {
+            call = waiter.call.get();
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        UpstreamResilience.propagateCancellation(waiter.result, call);
+        call.whenComplete((response, error) -> {
+            release(waiter, System.nanoTime() - start, UpstreamResilience.unwrap(error));
+            if (error == null) {
+                waiter.result.complete(response);
+            } else {
+                waiter.result.completeExceptionally(UpstreamResilience.unwrap(error));
+            }
+        });
+    }
+
+    private void release(Waiter waiter, long latencyNanos, Throwable error) {
+        synchronized (this) {
+            boolean saturated = inFlight >= (int) limit;
+            inFlight--;
+            running.merge(waiter.priority, -1, Integer::sum);
+
+            if (error instanceof OpenAIException openAIException && openAIException.getStatusCode() == 429) {
+                decrease();
+            } else if (error == null) {
+                double[] averages = latencyAverages.computeIfAbsent(waiter.purpose, purpose -> new double[2]);
+                double latencyMs = latencyNanos / 1e6;
+                if (averages[1] == 0) {
+                    averages[0] = latencyMs;
+                    averages[1] = latencyMs;
+                } else {
+                    averages[0] += SHORT_ALPHA * (latencyMs - averages[0]);
+                    averages[1] += LONG_ALPHA * (latencyMs - averages[1]);
+                }
+                if (averages[0] > latencyTolerance * averages[1]) {
+                    decrease();
+                } else if (saturated) {
+                    limit = Math.min(maxLimit, limit + 1.0 / limit);
+                }
+            }
+        }
+        dispatch();
+    }
+
+    private void decrease() {
+        long now = System.nanoTime();
+        if (now - lastDecrease >= DECREASE_COOLDOWN_NANOS) {
+            lastDecrease = now;
+            limit = Math.max(minLimit, limit * backoffRatio);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A prompt laid out for the provider's automatic prefix caching. The fixed instructions come first
+ * and are byte-identical on every call; the per-call sections (latest input, current documents,
+ * elapsed time) are appended after them, so they never break the cached prefix.
+ */
+public final class PromptTemplate {
+    private final String instructions;
+
+    public PromptTemplate(String instructions) {
+        this.instructions = instructions.strip();
+    }
+
+    public String instructions() {
+        return instructions;
+    }
+
+    public Filled fill() {
+        return new Filled();
+    }
+
+    /** The volatile sections of one call, in the order they are added. */
+    public final class Filled {
+        private final StringBuilder sections = new StringBuilder();
+
+        private Filled() {
+        }
+
+        public Filled section(String heading, String content) {
+            if (!sections.isEmpty()) {
+                sections.append("\n\n");
+            }
+            if (heading != null) {
+                sections.append(heading).append(":\n");
+            }
+            sections.append(content.strip());
+            return this;
+        }
+
+        /**
+         * One user message with the instructions followed by the sections, after the conversation
+         * context. The context is the prefix shared with the other calls of the turn and with the
+         * next turn, so it has to stay in front.
+         */
+        public List<Map<String, Object>> after(List<Map<String, Object>> context) {
+            List<Map<String, Object>> messages = new ArrayList<>(context);
+            messages.add(message("user", instructions + "\n\n" + sections));
+            return messages;
+        }
+
+        /** The instructions as a system message and the sections as the user message, for calls without context. */
+        public List<Map<String, Object>> standalone() {
+            return List.of(message("system", instructions), message("user", sections.toString()));
+        }
+    }
+
+    private static Map<String, Object> message(String role, String content) {
+        Map<String, Object> message = new HashMap<>();
+        message.put("role", role);
+        message.put("content", content);
+        return message;
+    }
+}
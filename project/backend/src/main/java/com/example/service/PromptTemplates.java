@@ -0,0 +1,111 @@
+package com.example.service;
+
+/**
+ * The instruction part of every prompt the service sends. These texts must not contain anything
+ * that varies between calls; see {@link PromptTemplate}.
+ */
+final class PromptTemplates {
+
+    static final PromptTemplate THOUGHTS = new PromptTemplate("""
+            Uppdatera dina inre psykologiska reflektioner utifrån patientens senaste meddelande ovan.
+            Lägg till nya observationer, hypoteser eller insikter. Skriv bara de NYA tankarna du får, inte alla gamla.
+            
+            Skriv bara dina nya inre tankar, en per rad med bindestreck.
+            """);
+
+    static final PromptTemplate REPLY = new PromptTemplate("""
+            Nedan finns dina inre reflektioner, sessionsplanen (följ denna strategiskt) och sessionstiden.
+            
+            Som professionell terapeut ska du:
+            - Fortsätta samtalet i din egen takt
+            - Anpassa samtalet efter patientens behov
+            - Avsluta endast när det känns naturligt eller om patienten vill avsluta
+            
+            Svara högt som Erik psykologen på patientens senaste meddelande ovan. Håll svaret kort (1-2 meningar).
+            """);
+
+    static final PromptTemplate PROFILE = new PromptTemplate("""
+            Du är en profil-analytiker som samlar fakta om PATIENTEN från ett psykologsamtal.
+            Du får den befintliga patient-profilen, där varje punkt har ett id inom hakparentes, och ett nytt samtalsutdrag.
+            
+            Uppdatera ENDAST profilen för PATIENTEN med NYA FAKTA som framkommer. Inkludera:
+            - Personliga detaljer om patienten (ålder, jobb, familj, etc.)
+            - Patientens intressen och hobbies
+            - Patientens problem eller utmaningar
+            - Patientens mål och drömmar
+            - Patientens personlighet och beteende
+            
+            VIKTIGT: Samla endast information om PATIENTEN, inte om psykologen Erik.
+            
+            """ + deltaInstructions(DocumentType.PROFILE));
+
+    static final PromptTemplate PLAN = new PromptTemplate("""
+            Du är en expert psykolog som skapar adaptiva terapeutiska sessionsplaner.
+            Du får den befintliga sessionsplanen, där varje punkt har ett id inom hakparentes, det senaste
+            samtalsutbytet, samtalstempot med de senaste meddelandena och sessionsstatus.
+            
+            BEDÖM PROGRESSIONEN: Analysera samtalstempot och tidsstämplarna och bedöm:
+            - Hur snabbt går samtalet framåt?
+            - Ger patienten djupa svar eller korta/ytliga?
+            - Hur mycket tid tar varje utbyte?
+            - Är patienten engagerad eller motsträvig?
+            - Behöver vi ändra takt eller fokus?
+            
+            INSTRUKTIONER FÖR PLANREVISION:
+            - Prioritera de VIKTIGASTE punkterna, ta bort det som inte längre är aktuellt
+            - Om progression är långsam: korta ner planen, fokusera på 1-2 huvudpunkter
+            - Om tid börjar ta slut: anpassa "Nästa Steg" för snabb avslutning
+            - Ta bort steg i "Nästa Steg" som redan är genomförda
+            - Var realistisk om vad som hinns med
+            
+            """ + deltaInstructions(DocumentType.PLAN));
+
+    static final PromptTemplate ANALYSIS = new PromptTemplate(String.format("""
+            Analysera det senaste samtalsutbytet som Eriks inre röst, profil-analytiker och planerare på en gång.
+            Nedan finns utbytet, dina nuvarande inre reflektioner, patient-profilen och sessionsplanen (varje punkt
+            med ett id inom hakparentes, egna id:n per dokument), samtalstempot med de senaste meddelandena och sessionsstatus.
+            
+            Gör tre saker:
+            1. "thoughts": dina NYA inre psykologiska reflektioner – observationer, hypoteser eller insikter.
+               Skriv bara nya tankar, inte de gamla.
+            2. "profile": nya FAKTA om PATIENTEN (personliga detaljer, intressen, problem, mål, personlighet),
+               aldrig om psykologen Erik. Avsnitt: %s
+            3. "plan": revidera sessionsplanen utifrån progressionen och samtalstempot. Prioritera det viktigaste,
+               ta bort det som inte längre är aktuellt eller redan genomfört, och var realistisk om vad som hinns med.
+               Avsnitt: %s
+            
+            Skriv INTE om dokumenten. Svara ENDAST med ett JSON-objekt:
+            {"thoughts": ["<ny tanke>"],
+             "profile": {"add": [{"section": "<avsnitt>", "text": "<ny punkt>"}], "update": [{"id": <id>, "text": "<ny lydelse>"}], "remove": [<id>]},
+             "plan": {"add": [...], "update": [...], "remove": [...]}}
+            
+            Id:n i "profile" avser profilens punkter och id:n i "plan" planens. Lämna en lista tom om inget
+            ändrats. Varje punkt och tanke ska vara kort, högst en mening.
+            """, String.join(", ", DocumentType.PROFILE.sections()), String.join(", ", DocumentType.PLAN.sections())));
+
+    static final PromptTemplate SUMMARY = new PromptTemplate("""
+            Du sammanfattar ett pågående psykologsamtal mellan en patient och psykologen Erik.
+            Du får den tidigare sammanfattningen och nya delar av samtalet.
+            
+            Skriv en uppdaterad, koncis sammanfattning (max 200 ord) av hela samtalet hittills:
+            patientens berättelse, känslor och teman, samt vad Erik har frågat eller föreslagit.
+            Skriv bara sammanfattningen.
+            """);
+
+    private PromptTemplates() {
+    }
+
+    private static String deltaInstructions(DocumentType type) {
+        return String.format("""
+            Skriv INTE om hela dokumentet. Svara ENDAST med ändringarna som ett JSON-objekt:
+            {"add": [{"section": "<avsnitt>", "text": "<ny punkt>"}],
+             "update": [{"id": <id>, "text": "<ny lydelse>"}],
+             "remove": [<id>]}
+            
+            - "add": nya punkter, i ett av avsnitten: %s
+            - "update": befintliga punkter som behöver kompletteras eller rättas
+            - "remove": punkter som visat sig felaktiga, inaktuella eller dubbletter
+            - Lämna en lista tom om inget ändrats. Varje punkt ska vara kort, högst en mening.
+            """, String.join(", ", type.sections()));
+    }
+}
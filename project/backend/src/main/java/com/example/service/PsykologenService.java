@@ -1,453 +1,499 @@
 package com.example.service;
 
 import com.example.SystemPrompts;
-import com.google.gson.*;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 @Service
 public class PsykologenService {
-    private static final String MODEL = "gpt-4o-mini";
-    private static final String API_URL = "https://api.openai.com/v1/chat/completions";
-    private static final Gson gson = new Gson();
-    private static final HttpClient httpClient = HttpClient.newHttpClient();
-    
-    @Value("${openai.api.key:#{systemProperties['OPENAI_API_KEY']}}")
-    private String apiKey;
-    
-    private final List<Map<String, Object>> messages;
-    private final List<String> internalThoughts;
-    private final long sessionStartTime;
-    private final ExecutorService executor;
-    
-    private int conversationCount = 0;
-    private int totalInputTokens = 0;
-    private int totalOutputTokens = 0;
-
-    public PsykologenService() {
-        this.messages = new ArrayList<>();
-        this.internalThoughts = new ArrayList<>();
-        this.sessionStartTime = System.currentTimeMillis();
-        this.executor = Executors.newCachedThreadPool();
-        
-        Map<String, Object> systemMessage = new HashMap<>();
-        systemMessage.put("role", "system");
-        systemMessage.put("content", SystemPrompts.SYSTEM_PROMPT);
-        messages.add(systemMessage);
-        
-        cleanupSessionFiles();
-    }
+    private static final int TIMING_RECENT_MESSAGES = 6;
+    
+    @Value("${psykologen.response-mode:sequential}")
+    private String defaultResponseMode;
+    
+    @Value("${psykologen.analysis-mode:separate}")
+    private String defaultAnalysisMode;
+    
+    @Autowired
+    private OpenAIClient openAIClient;
+    
+    @Autowired
+    private SessionRegistry sessionRegistry;
+    
+    @Autowired
+    private TurnMetrics turnMetrics;
+    
+    @Autowired
+    private BackgroundUpdateScheduler backgroundScheduler;
+    
+    @Autowired
+    private ContextManager contextManager;
+    
+    @Autowired
+    private OpeningPool openingPool;
+    
+    @Autowired
+    private DocumentStore documentStore;
+    
+    @Autowired
+    private OutboundLimiter outboundLimiter;
+    
+    @Autowired
+    private CircuitBreaker circuitBreaker;
+    
+    @Autowired
+    private ModelRouter modelRouter;
+    
+    @Autowired
+    private LlmMetrics llmMetrics;
     
     public void initializeSession() {
-        if (apiKey == null || apiKey.isEmpty()) {
-            throw new IllegalStateException("OPENAI_API_KEY must be set");
+        if (!openAIClient.isConfigured()) {
+            throw new IllegalStateException("OPENAI_API_KEY must be set unless every call purpose is routed to another endpoint than api.openai.com");
         }
     }
     
-    private void cleanupSessionFiles() {
-        try {
-            Files.deleteIfExists(Paths.get("profile.md"));
-            Files.deleteIfExists(Paths.get("plan.md"));
-        } catch (IOException e) {
-            // Ignore cleanup errors
-        }
+    private CompletableFuture<ChatCompletion> callOpenAI(CallPurpose purpose, List<Map<String, Object>> conversationMessages) {
+        return openAIClient.complete(purpose, conversationMessages);
     }
     
-    private JsonObject callOpenAI(List<Map<String, Object>> conversationMessages) throws Exception {
-        JsonObject requestBody = new JsonObject();
-        requestBody.addProperty("model", MODEL);
-        
-        JsonArray messagesArray = new JsonArray();
-        for (Map<String, Object> msg : conversationMessages) {
-            JsonObject msgNode = new JsonObject();
-            msgNode.addProperty("role", (String) msg.get("role"));
-            msgNode.addProperty("content", (String) msg.get("content"));
-            messagesArray.add(msgNode);
-        }
-        requestBody.add("messages", messagesArray);
-        
-        String requestBodyStr = gson.toJson(requestBody);
-        
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(API_URL))
-                .header("Authorization", "Bearer " + apiKey)
-                .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(requestBodyStr))
-                .build();
-        
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-        
-        if (response.statusCode() != 200) {
-            throw new RuntimeException("OpenAI API error: " + response.statusCode() + " " + response.body());
-        }
-        
-        return JsonParser.parseString(response.body()).getAsJsonObject();
+    private CompletableFuture<ChatCompletion> callOpenAIJson(CallPurpose purpose, List<Map<String, Object>> conversationMessages) {
+        return openAIClient.completeJson(purpose, conversationMessages);
     }
     
-    private String getAssistantResponse(JsonObject apiResponse) {
-        return apiResponse.getAsJsonArray("choices").get(0).getAsJsonObject()
-                .getAsJsonObject("message").get("content").getAsString();
+    private CompletableFuture<ChatCompletion> callOpenAI(CallPurpose purpose, List<Map<String, Object>> conversationMessages,
+                                                     Consumer<String> onDelta) {
+        return onDelta == null
+                ? openAIClient.complete(purpose, conversationMessages)
+                : openAIClient.stream(purpose, conversationMessages, onDelta);
     }
     
-    private void updateTokenCount(JsonObject apiResponse) {
-        JsonElement usage = apiResponse.get("usage");
-        if (usage != null && !usage.isJsonNull()) {
-            JsonObject usageObj = usage.getAsJsonObject();
-            totalInputTokens += usageObj.get("prompt_tokens").getAsInt();
-            totalOutputTokens += usageObj.get("completion_tokens").getAsInt();
+    private String getAssistantResponse(ChatCompletion apiResponse) {
+        if (apiResponse.content() == null) {
+            throw new IllegalStateException("OpenAI response has no message content");
         }
+        return apiResponse.content();
+    }
+    
+    private void updateTokenCount(ConversationSession session, ChatCompletion apiResponse) {
+        session.addTokens(apiResponse.promptTokens(), apiResponse.completionTokens(), apiResponse.cachedTokens());
+    }
+    
+    public ConversationSession createSession() {
+        return createSession(null);
     }
     
-    public String startConversation() throws Exception {
+    /** Creates a session using the given analysis mode, or the configured default when {@code null}. */
+    public ConversationSession createSession(String analysisMode) {
         initializeSession();
+        return sessionRegistry.create(AnalysisMode.parse(analysisMode, getDefaultAnalysisMode()));
+    }
+    
+    public CompletableFuture<String> startConversation(String sessionId) {
+        return startConversation(sessionId, null);
+    }
+    
+    public CompletableFuture<String> startConversation(String sessionId, Consumer<String> onDelta) {
+        initializeSession();
+        ConversationSession session = sessionRegistry.get(sessionId);
         
-        // Erik opens the conversation
-        Map<String, Object> openingPrompt = new HashMap<>();
-        openingPrompt.put("role", "user");
-        openingPrompt.put("content", "Starta samtalet som du själv, Erik. Detta är vårt första möte. Håll det kort.");
-        
-        List<Map<String, Object>> openingMessages = new ArrayList<>(messages);
-        openingMessages.add(openingPrompt);
-        
-        JsonObject openingResponse = callOpenAI(openingMessages);
-        String agentOpening = getAssistantResponse(openingResponse);
-        updateTokenCount(openingResponse);
+        ConversationLog.Snapshot history = session.getHistory();
         
-        Map<String, Object> assistantMessage = new HashMap<>();
-        assistantMessage.put("role", "assistant");
-        assistantMessage.put("content", agentOpening);
-        assistantMessage.put("timestamp", System.currentTimeMillis());
-        assistantMessage.put("session_time", System.currentTimeMillis() - sessionStartTime);
-        messages.add(assistantMessage);
+        // A fresh session has the same input every time, so a pre-generated opening can be used
+        if (history.isEmpty()) {
+            Optional<String> pooled = openingPool.take();
+            if (pooled.isPresent()) {
+                if (onDelta != null) {
+                    onDelta.accept(pooled.get());
+                }
+                addOpening(session, pooled.get());
+                return CompletableFuture.completedFuture(pooled.get());
+            }
+        }
         
-        return agentOpening;
+        // Erik opens the conversation
+        List<Map<String, Object>> openingMessages = contextManager.buildContext(session, history);
+        openingMessages.add(Map.of("role", ChatMessage.USER, "content", SystemPrompts.OPENING_PROMPT));
+        
+        return callOpenAI(CallPurpose.OPENING, openingMessages, onDelta).thenApply(openingResponse -> {
+            String agentOpening = getAssistantResponse(openingResponse);
+            updateTokenCount(session, openingResponse);
+            addOpening(session, agentOpening);
+            return agentOpening;
+        });
     }
     
-    public String processMessage(String userInput) throws Exception {
+    private void addOpening(ConversationSession session, String agentOpening) {
+        session.addMessage(ChatMessage.ASSISTANT, agentOpening);
+    }
+    
+    public CompletableFuture<String> processMessage(String sessionId, String userInput) {
+        return processMessage(sessionId, userInput, null, null);
+    }
+    
+    public CompletableFuture<String> processMessage(String sessionId, String userInput, String responseMode,
+                                                    Consumer<String> onDelta) {
         initializeSession();
+        ConversationSession session = sessionRegistry.get(sessionId);
+        ResponseMode mode = ResponseMode.parse(responseMode, getDefaultResponseMode());
+        long turnStart = System.currentTimeMillis();
+        
+        session.addMessage(ChatMessage.USER, userInput);
+        
+        // The patient's message goes out as its own message, exactly as it will sit in every later
+        // turn's history, so the whole history stays a cacheable prefix
+        ConversationLog.Snapshot history = session.getHistory();
+        
+        boolean fused = session.getAnalysisMode() == AnalysisMode.FUSED;
+        String metricsMode = fused ? AnalysisMode.FUSED.tag() : mode.tag();
+        
+        CompletableFuture<String> reply;
+        if (fused) {
+            // This turn's thoughts come from the analysis call after the reply, for the next turn
+            reply = timedErikResponse(session, history, metricsMode, onDelta);
+        } else if (mode == ResponseMode.PIPELINED) {
+            // Erik answers with the thoughts from earlier turns; this turn's thoughts land for the next one
+            extractThoughts(session, history, metricsMode).whenComplete((ignored, error) -> {
+                if (error != null) {
+                    turnMetrics.recordFailure(metricsMode, "thoughts");
+                }
+            });
+            reply = timedErikResponse(session, history, metricsMode, onDelta);
+        } else {
+            reply = extractThoughts(session, history, metricsMode)
+                    .thenCompose(ignored -> timedErikResponse(session, history, metricsMode, onDelta));
+        }
         
-        long currentTime = System.currentTimeMillis();
-        Map<String, Object> userMessage = new HashMap<>();
-        userMessage.put("role", "user");
-        userMessage.put("content", userInput);
-        userMessage.put("timestamp", currentTime);
-        userMessage.put("session_time", currentTime - sessionStartTime);
-        messages.add(userMessage);
-        
-        String newThoughts = processInternalThoughts(userInput);
+        return reply.thenApply(agentResponse -> {
+            ChatMessage assistantMessage = session.addMessage(ChatMessage.ASSISTANT, agentResponse);
+            
+            session.incrementConversationCount();
+            turnMetrics.record(metricsMode, "turn", assistantMessage.timestamp() - turnStart);
+            
+            // Start background updates
+            startBackgroundUpdates(session, userInput, agentResponse);
+            
+            return agentResponse;
+        });
+    }
+    
+    public ResponseMode getDefaultResponseMode() {
+        return ResponseMode.parse(defaultResponseMode, ResponseMode.SEQUENTIAL);
+    }
+    
+    public AnalysisMode getDefaultAnalysisMode() {
+        return AnalysisMode.parse(defaultAnalysisMode, AnalysisMode.SEPARATE);
+    }
+    
+    public Map<String, Object> getTurnMetrics() {
+        return turnMetrics.snapshot();
+    }
+    
+    private CompletableFuture<Void> extractThoughts(ConversationSession session, List<ChatMessage> history,
+                                                    String metricsMode) {
+        long start = System.currentTimeMillis();
+        return processInternalThoughts(session, history).thenAccept(newThoughts -> {
+            turnMetrics.record(metricsMode, "thoughts", System.currentTimeMillis() - start);
+            parseThoughtLines(newThoughts).forEach(session::addInternalThought);
+        });
+    }
+    
+    static List<String> parseThoughtLines(String newThoughts) {
+        List<String> thoughts = new ArrayList<>();
         if (newThoughts != null && !newThoughts.startsWith("Inga")) {
             String[] thoughtLines = newThoughts.split("\n");
             for (String line : thoughtLines) {
                 line = line.trim();
                 if (line.startsWith("- ")) {
-                    internalThoughts.add(line.substring(2));
+                    thoughts.add(line.substring(2));
                 } else if (!line.isEmpty() && !line.startsWith("-")) {
-                    internalThoughts.add(line);
+                    thoughts.add(line);
                 }
             }
         }
-        
-        String agentResponse = getErikResponse(userInput);
-        
-        long responseTime = System.currentTimeMillis();
-        Map<String, Object> assistantMessage = new HashMap<>();
-        assistantMessage.put("role", "assistant");
-        assistantMessage.put("content", agentResponse);
-        assistantMessage.put("timestamp", responseTime);
-        assistantMessage.put("session_time", responseTime - sessionStartTime);
-        messages.add(assistantMessage);
-        
-        conversationCount++;
-        
-        // Start background updates
-        startBackgroundUpdates(userInput, agentResponse);
-        
-        return agentResponse;
+        return thoughts;
     }
     
-    private String processInternalThoughts(String userInput) throws Exception {
-        String currentThoughts = String.join("\n", internalThoughts.stream()
+    static String formatThoughts(List<String> thoughts) {
+        return String.join("\n", thoughts.stream()
                 .map(thought -> "- " + thought)
                 .toList());
-        
-        String thoughtPrompt = String.format("""
-            Baserat på vad användaren precis sa: "%s"
-            
-            Dina nuvarande inre reflektion:
-            %s
-            
-            Uppdatera dina inre psykologiska reflektion. Lägg till nya observationer, hypoteser eller insikter. Skriv bara de NYA tankarna du får, inte alla gamla.
-            
-            Skriv bara dina nya inre tankar, en per rad med bindestreck.
-            """, userInput, currentThoughts.isEmpty() ? "Inga tidigare tankar." : currentThoughts);
-        
-        Map<String, Object> thoughtMessage = new HashMap<>();
-        thoughtMessage.put("role", "user");
-        thoughtMessage.put("content", thoughtPrompt);
-        
-        List<Map<String, Object>> thoughtMessages = new ArrayList<>(messages.subList(0, messages.size() - 1));
-        thoughtMessages.add(thoughtMessage);
-        
-        JsonObject thoughtResponse = callOpenAI(thoughtMessages);
-        updateTokenCount(thoughtResponse);
-        
-        return getAssistantResponse(thoughtResponse).trim();
     }
     
-    private String getErikResponse(String userInput) throws Exception {
-        String currentThoughtsStr = String.join("\n", internalThoughts.stream()
-                .map(thought -> "- " + thought)
-                .toList());
-        
-        String sessionPlan = readSessionPlan();
-        
-        double sessionTimeMinutes = (System.currentTimeMillis() - sessionStartTime) / 60000.0;
-        
-        String responsePrompt = String.format("""
-            Du har tillgång till:
-            
-            DINA INRE REFLEKTION:
-            %s
-            
-            SESSIONSPLAN (följ denna strategiskt):
-            %s
-            
-            SESSIONSTID:
-            - Pågått: %.1f minuter
-            
-            Användarens senaste meddelande: "%s"
-            
-            Som professionell terapeut ska du:
-            - Fortsätta samtalet i din egen takt
-            - Anpassa samtalet efter patientens behov
-            - Avsluta endast när det känns naturligt eller om patienten vill avsluta
-            
-            Svara nu högt som Erik psykologen. Håll svaret kort (1-2 meningar).
-            """, currentThoughtsStr, sessionPlan.isEmpty() ? "Ingen plan än." : sessionPlan, 
-            sessionTimeMinutes, userInput);
+    private CompletableFuture<String> timedErikResponse(ConversationSession session, List<ChatMessage> history,
+                                                        String metricsMode, Consumer<String> onDelta) {
+        long start = System.currentTimeMillis();
+        return getErikResponse(session, history, onDelta)
+                .whenComplete((response, error) ->
+                        turnMetrics.record(metricsMode, "reply", System.currentTimeMillis() - start));
+    }
+    
+    private CompletableFuture<String> processInternalThoughts(ConversationSession session,
+                                                              List<ChatMessage> history) {
+        String currentThoughts = formatThoughts(session.getInternalThoughts());
+        
+        List<Map<String, Object>> thoughtMessages = PromptTemplates.THOUGHTS.fill()
+                .section("DINA NUVARANDE INRE REFLEKTIONER", currentThoughts.isEmpty() ? "Inga tidigare tankar." : currentThoughts)
+                .after(contextManager.buildContext(session, history));
+        
+        return callOpenAI(CallPurpose.THOUGHTS, thoughtMessages).thenApply(thoughtResponse -> {
+            updateTokenCount(session, thoughtResponse);
+            return getAssistantResponse(thoughtResponse).trim();
+        });
+    }
+    
+    private CompletableFuture<String> getErikResponse(ConversationSession session, List<ChatMessage> history,
+                                                      Consumer<String> onDelta) {
+        String currentThoughtsStr = formatThoughts(session.getInternalThoughts());
         
-        Map<String, Object> responseMessage = new HashMap<>();
-        responseMessage.put("role", "user");
-        responseMessage.put("content", responsePrompt);
+        String sessionPlan = readSessionPlan(session);
         
-        List<Map<String, Object>> responseMessages = new ArrayList<>(messages.subList(0, messages.size() - 1));
-        responseMessages.add(responseMessage);
+        double sessionTimeMinutes = (System.currentTimeMillis() - session.getSessionStartTime()) / 60000.0;
         
-        JsonObject response = callOpenAI(responseMessages);
-        updateTokenCount(response);
+        List<Map<String, Object>> responseMessages = PromptTemplates.REPLY.fill()
+                .section("DINA INRE REFLEKTIONER", currentThoughtsStr)
+                .section("SESSIONSPLAN", sessionPlan.isEmpty() ? "Ingen plan än." : sessionPlan)
+                .section("SESSIONSTID", String.format("- Pågått: %.1f minuter", sessionTimeMinutes))
+                .after(contextManager.buildContext(session, history));
         
-        return getAssistantResponse(response);
+        return callOpenAI(CallPurpose.REPLY, responseMessages, onDelta).thenApply(response -> {
+            updateTokenCount(session, response);
+            return getAssistantResponse(response);
+        });
     }
     
-    private String readSessionPlan() {
-        try {
-            Path planPath = Paths.get("plan.md");
-            if (Files.exists(planPath)) {
-                return Files.readString(planPath);
-            }
-        } catch (IOException e) {
-            // Ignore read errors
-        }
-        return "";
+    private String readSessionPlan(ConversationSession session) {
+        return documentStore.getContent(session.getId(), DocumentType.PLAN);
     }
     
-    public String getProfile() {
-        try {
-            Path profilePath = Paths.get("profile.md");
-            if (Files.exists(profilePath)) {
-                return Files.readString(profilePath);
-            }
-        } catch (IOException e) {
-            // Ignore read errors
+    public ConversationSession findSession(String sessionId) {
+        return sessionRegistry.find(sessionId);
+    }
+    
+    /** Latest profile or plan, or {@code null} if none has been written for the session. */
+    public VersionedDocument getDocument(String sessionId, DocumentType type) {
+        return documentStore.get(sessionId, type);
+    }
+    
+    /**
+     * Completes once the document is newer than {@code sinceVersion}. Unknown sessions will never
+     * get an update, so they complete right away with whatever is stored.
+     */
+    public CompletableFuture<VersionedDocument> awaitDocument(String sessionId, DocumentType type, long sinceVersion) {
+        if (sessionRegistry.find(sessionId) == null) {
+            return CompletableFuture.completedFuture(documentStore.get(sessionId, type));
         }
-        return "Ingen profil skapad än.";
+        return documentStore.awaitNewer(sessionId, type, sinceVersion);
     }
     
-    public String getPlan() {
-        return readSessionPlan().isEmpty() ? "Ingen plan skapad än." : readSessionPlan();
+    public static String emptyDocument(DocumentType type) {
+        return type == DocumentType.PROFILE ? "Ingen profil skapad än." : "Ingen plan skapad än.";
     }
     
-    public List<Map<String, Object>> getConversation() {
-        return new ArrayList<>(messages);
+    
+    public Map<String, Object> getBackgroundStats() {
+        return backgroundScheduler.getStats();
     }
     
+    public Map<String, Object> getUpstreamStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("limiter", outboundLimiter.getStats());
+        stats.put("circuit", circuitBreaker.getStats());
+        stats.put("promptCache", llmMetrics.getPromptCacheStats());
+        stats.put("routes", modelRouter.getStats());
+        return stats;
+    }
     
-    private void startBackgroundUpdates(String userInput, String agentResponse) {
-        // Start profile update in background
-        executor.submit(() -> updateProfileBackground(userInput, agentResponse));
+    private void startBackgroundUpdates(ConversationSession session, String userInput, String agentResponse) {
+        Exchange exchange = new Exchange(userInput, agentResponse);
+        
+        if (session.getAnalysisMode() == AnalysisMode.FUSED) {
+            // One call for the next turn's thoughts and both documents
+            backgroundScheduler.submit(session.getId(), "analysis", exchange,
+                    batch -> analyzeTurn(session, batch));
+        } else {
+            // Queue profile update in background
+            backgroundScheduler.submit(session.getId(), DocumentType.PROFILE.tag(), exchange,
+                    batch -> updateProfileBackground(session, batch));
+            
+            // Queue session plan update in background
+            backgroundScheduler.submit(session.getId(), DocumentType.PLAN.tag(), exchange,
+                    batch -> updateSessionPlan(session, batch));
+        }
         
-        // Start session plan update in background
-        executor.submit(() -> updateSessionPlan(userInput, agentResponse));
+        // Fold turns that left the verbatim window into the rolling summary
+        if (!contextManager.pendingForSummary(session, session.getHistory()).isEmpty()) {
+            backgroundScheduler.submit(session.getId(), "summary", exchange,
+                    batch -> updateContextSummary(session));
+        }
     }
     
-    private void updateProfileBackground(String userInput, String agentResponse) {
-        try {
-            String profileContent = "";
-            Path profilePath = Paths.get("profile.md");
-            if (Files.exists(profilePath)) {
-                profileContent = Files.readString(profilePath);
+    private CompletableFuture<Void> updateContextSummary(ConversationSession session) {
+        List<ChatMessage> pending = contextManager.pendingForSummary(session, session.getHistory());
+        if (pending.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        ContextSummary previous = session.getContextSummary();
+        long throughSeq = pending.get(pending.size() - 1).seq();
+        
+        StringBuilder excerpt = new StringBuilder();
+        for (ChatMessage msg : pending) {
+            String role = msg.isUser() ? "Patient" : "Erik";
+            excerpt.append(role).append(": ").append(msg.content()).append("\n");
+        }
+        
+        List<Map<String, Object>> summaryMessages = PromptTemplates.SUMMARY.fill()
+                .section("TIDIGARE SAMMANFATTNING", previous.isEmpty() ? "Ingen sammanfattning än." : previous.text())
+                .section("NYA DELAR AV SAMTALET", excerpt.toString())
+                .standalone();
+        
+        return callOpenAI(CallPurpose.SUMMARY, summaryMessages).thenAccept(response -> {
+            updateTokenCount(session, response);
+            session.setContextSummary(new ContextSummary(getAssistantResponse(response).trim(), throughSeq));
+        });
+    }
+    
+    private String formatExchanges(List<Exchange> exchanges, String agentLabel) {
+        StringBuilder excerpt = new StringBuilder();
+        for (Exchange exchange : exchanges) {
+            if (!excerpt.isEmpty()) {
+                excerpt.append("\n");
             }
+            excerpt.append("Patient: ").append(exchange.userInput()).append("\n")
+                    .append(agentLabel).append(": ").append(exchange.agentResponse());
+        }
+        return excerpt.toString();
+    }
+    
+    private CompletableFuture<Void> updateProfileBackground(ConversationSession session, List<Exchange> exchanges) {
+        try {
+            SectionedDocument profile = SectionedDocument.parse(DocumentType.PROFILE,
+                    documentStore.getContent(session.getId(), DocumentType.PROFILE));
             
-            String profilePrompt = String.format("""
-                Du är en profil-analytiker som samlar fakta om PATIENTEN från ett psykologsamtal.
-                
-                BEFINTLIG PATIENT-PROFIL:
-                %s
-                
-                NYTT SAMTALSUTDRAG:
-                Patient: %s
-                Psykolog Erik: %s
-                
-                Uppdatera ENDAST profilen för PATIENTEN med NYA FAKTA som framkommer. Inkludera:
-                - Personliga detaljer om patienten (ålder, jobb, familj, etc.)
-                - Patientens intressen och hobbies
-                - Patientens problem eller utmaningar
-                - Patientens mål och drömmar  
-                - Patientens personlighet och beteende
-                
-                VIKTIGT: Samla endast information om PATIENTEN, inte om psykologen Erik.
-                
-                Skriv en uppdaterad patient-profil i markdown-format med tydlig struktur:
-                
-                # PATIENT-PROFIL
-                
-                ## Grundläggande Information
-                [personliga detaljer]
-                
-                ## Problem & Utmaningar
-                [vad patienten söker hjälp för]
-                
-                ## Personlighet & Beteende
-                [observationer om patienten]
-                
-                ## Mål & Drömmar
-                [vad patienten vill uppnå]
-                
-                ## Övriga Noteringar
-                [andra relevanta fakta]
-                """, profileContent.isEmpty() ? "Ingen befintlig profil." : profileContent,
-                userInput, agentResponse);
-            
-            Map<String, Object> profileMessage = new HashMap<>();
-            profileMessage.put("role", "user");
-            profileMessage.put("content", profilePrompt);
-            
-            JsonObject response = callOpenAI(List.of(profileMessage));
-            String updatedProfile = getAssistantResponse(response);
+            List<Map<String, Object>> profileMessages = PromptTemplates.PROFILE.fill()
+                    .section("BEFINTLIG PATIENT-PROFIL", profile.toPromptListing())
+                    .section("NYTT SAMTALSUTDRAG", formatExchanges(exchanges, "Psykolog Erik"))
+                    .standalone();
             
-            Files.writeString(profilePath, updatedProfile);
+            return callOpenAIJson(CallPurpose.PROFILE, profileMessages).thenAccept(response -> {
+                updateTokenCount(session, response);
+                mergeDelta(session, DocumentType.PROFILE, profile, getAssistantResponse(response));
+            });
             
         } catch (Exception e) {
-            // Silent error handling
+            return CompletableFuture.failedFuture(e);
         }
     }
     
-    private void updateSessionPlan(String userInput, String agentResponse) {
+    private CompletableFuture<Void> updateSessionPlan(ConversationSession session, List<Exchange> exchanges) {
         try {
-            String planContent = "";
-            Path planPath = Paths.get("plan.md");
-            if (Files.exists(planPath)) {
-                planContent = Files.readString(planPath);
-            }
+            SectionedDocument plan = SectionedDocument.parse(DocumentType.PLAN, readSessionPlan(session));
+            
+            double elapsedTime = (System.currentTimeMillis() - session.getSessionStartTime()) / 60000.0;
             
-            double elapsedTime = (System.currentTimeMillis() - sessionStartTime) / 60000.0;
+            String timingAnalysis = buildTimingAnalysis(session.getHistory());
             
-            String timingAnalysis = buildTimingAnalysis();
+            List<Map<String, Object>> planMessages = PromptTemplates.PLAN.fill()
+                    .section("BEFINTLIG SESSIONSPLAN", plan.toPromptListing())
+                    .section("SENASTE SAMTALSUTBYTE", formatExchanges(exchanges, "Erik"))
+                    .section(null, timingAnalysis)
+                    .section("SESSIONSSTATUS", String.format("- Tid förfluten: %.1f minuter", elapsedTime))
+                    .standalone();
             
-            String planPrompt = String.format("""
-                Du är en expert psykolog som skapar adaptiva terapeutiska sessionsplaner.
-                
-                BEFINTLIG SESSIONSPLAN:
-                %s
-                
-                SENASTE SAMTALSUTBYTE:
-                Patient: %s
-                Erik: %s
-                
-                %s
-                
-                SESSIONSSTATUS:
-                - Tid förfluten: %.1f minuter
-                
-                BEDÖM PROGRESSIONEN: Analysera tidsstämplarna ovan och bedöm:
-                - Hur snabbt går samtalet framåt?
-                - Ger patienten djupa svar eller korta/ytliga?
-                - Hur mycket tid tar varje utbyte?
-                - Är patienten engagerad eller motsträvig?
-                - Behöver vi ändra takt eller fokus?
-                
-                INSTRUKTIONER FÖR PLANREVISION:
-                - Prioritera de VIKTIGASTE punkterna först
-                - Om progression är långsam: korta ner planen, fokusera på 1-2 huvudpunkter
-                - Om tid börjar ta slut: anpassa "Nästa Steg" för snabb avslutning
-                - Var realistisk om vad som hinns med
-                
-                Format i markdown:
-                
-                # SESSIONSPLAN
-                
-                ## Identifierade Problem
-                [huvudproblem som framkommit - prioriterat]
-                
-                ## Fokusområden (Justerat för tid)
-                [vad som MÅSTE utforskas inom kvarvarande tid]
-                
-                ## Terapeutisk Approach
-                [snabba, effektiva tekniker för kort session]
-                
-                ## Nästa Steg (Tidsjusterat)
-                [konkreta frågor som hinns med - prioriterade]
-                
-                ## Sessionsmål (Reviderat)
-                [realistiska mål för kvarvarande tid]
-                
-                ## Anteckningar för Erik
-                [specifika råd: prioritera, korta ner, eller förbereda avslutning]
-                
-                VIKTIGT: Anpassa hela planen baserat på progression och tid kvar!
-                """, planContent.isEmpty() ? "Ingen befintlig plan." : planContent,
-                userInput, agentResponse, timingAnalysis, elapsedTime, 10 - elapsedTime);
+            return callOpenAIJson(CallPurpose.PLAN, planMessages).thenAccept(response -> {
+                updateTokenCount(session, response);
+                mergeDelta(session, DocumentType.PLAN, plan, getAssistantResponse(response));
+            });
             
-            Map<String, Object> planMessage = new HashMap<>();
-            planMessage.put("role", "user");
-            planMessage.put("content", planPrompt);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+    
+    /**
+     * Fused analysis: a single call after Erik's reply that returns new internal thoughts together
+     * with the profile and plan deltas. It sends the conversation context once instead of once for
+     * the thoughts call plus the profile and plan excerpts, and makes two upstream calls per turn
+     * (reply and analysis) instead of four.
+     */
+    private CompletableFuture<Void> analyzeTurn(ConversationSession session, List<Exchange> exchanges) {
+        try {
+            SectionedDocument profile = SectionedDocument.parse(DocumentType.PROFILE,
+                    documentStore.getContent(session.getId(), DocumentType.PROFILE));
+            SectionedDocument plan = SectionedDocument.parse(DocumentType.PLAN, readSessionPlan(session));
+            String currentThoughts = formatThoughts(session.getInternalThoughts());
+            double elapsedTime = (System.currentTimeMillis() - session.getSessionStartTime()) / 60000.0;
             
-            JsonObject response = callOpenAI(List.of(planMessage));
-            String updatedPlan = getAssistantResponse(response);
+            ConversationLog.Snapshot history = session.getHistory();
+            List<Map<String, Object>> analysisMessages = PromptTemplates.ANALYSIS.fill()
+                    .section("SENASTE SAMTALSUTBYTE", formatExchanges(exchanges, "Erik"))
+                    .section("DINA NUVARANDE INRE REFLEKTIONER", currentThoughts.isEmpty() ? "Inga tidigare tankar." : currentThoughts)
+                    .section("BEFINTLIG PATIENT-PROFIL", profile.toPromptListing())
+                    .section("BEFINTLIG SESSIONSPLAN", plan.toPromptListing())
+                    .section(null, buildTimingAnalysis(history))
+                    .section("SESSIONSSTATUS", String.format("- Tid förfluten: %.1f minuter", elapsedTime))
+                    .after(contextManager.buildContext(session, history));
             
-            Files.writeString(planPath, updatedPlan);
+            long start = System.currentTimeMillis();
+            return callOpenAIJson(CallPurpose.ANALYSIS, analysisMessages).thenAccept(response -> {
+                turnMetrics.record(AnalysisMode.FUSED.tag(), "analysis", System.currentTimeMillis() - start);
+                updateTokenCount(session, response);
+                TurnAnalysis analysis = TurnAnalysis.parse(getAssistantResponse(response));
+                analysis.thoughts().forEach(session::addInternalThought);
+                mergeDelta(session, DocumentType.PROFILE, profile, analysis.profile());
+                mergeDelta(session, DocumentType.PLAN, plan, analysis.plan());
+            });
             
         } catch (Exception e) {
-            // Silent error handling
+            return CompletableFuture.failedFuture(e);
         }
     }
     
-    private String buildTimingAnalysis() {
-        StringBuilder analysis = new StringBuilder("SAMTALSHISTORIK MED TIDSSTÄMPLAR:\n");
-        
-        for (int i = 1; i < messages.size(); i++) { // Skip system message
-            Map<String, Object> msg = messages.get(i);
-            if (msg.containsKey("session_time")) {
-                String role = "user".equals(msg.get("role")) ? "Patient" : "Erik";
-                double sessionMins = ((Number) msg.get("session_time")).doubleValue() / 60000.0;
-                String content = (String) msg.get("content");
-                String preview = content.length() > 50 ? content.substring(0, 50) + "..." : content;
-                analysis.append(String.format("%d. [%.1fmin] %s: %s\n", i, sessionMins, role, preview));
-            }
+    /**
+     * Merges the model's delta into the document the prompt was built from. Background updates
+     * for one document never run concurrently (a fused session only has its analysis update), so
+     * that document is still the latest.
+     */
+    private void mergeDelta(ConversationSession session, DocumentType type, SectionedDocument base, String deltaJson) {
+        mergeDelta(session, type, base, DocumentDelta.parse(deltaJson));
+    }
+    
+    private void mergeDelta(ConversationSession session, DocumentType type, SectionedDocument base, DocumentDelta delta) {
+        if (delta.size() == 0) {
+            return;
+        }
+        documentStore.put(session.getId(), type, base.apply(delta).toMarkdown());
+    }
+    
+    /**
+     * Pace of the conversation for the plan prompts: the running statistics of the log plus the
+     * newest messages with their timestamps. Its cost does not grow with the length of the session.
+     */
+    static String buildTimingAnalysis(ConversationLog.Snapshot history) {
+        ConversationStats stats = history.stats();
+        StringBuilder analysis = new StringBuilder("SAMTALSTEMPO:\n");
+        analysis.append(String.format("- Patientens meddelanden: %d (%.1f per minut)%n",
+                stats.patientMessages(), stats.turnsPerMinute()));
+        analysis.append(String.format("- Patientens svarslängd: snitt %.0f tecken, senaste %d tecken%n",
+                stats.averagePatientLength(), stats.lastPatientLength()));
+        analysis.append(String.format("- Patientens svarstid: snitt %.0f s, senaste %.0f s%n",
+                stats.averageResponseTimeMs() / 1000.0, stats.lastResponseTimeMs() / 1000.0));
+        analysis.append(String.format("- Eriks repliker: snitt %.0f tecken%n", stats.averageAgentLength()));
+        
+        analysis.append("SENASTE MEDDELANDEN MED TIDSSTÄMPLAR:\n");
+        for (ChatMessage msg : history.last(TIMING_RECENT_MESSAGES)) {
+            String role = msg.isUser() ? "Patient" : "Erik";
+            double sessionMins = msg.sessionTime() / 60000.0;
+            String content = msg.content();
+            String preview = content.length() > 50 ? content.substring(0, 50) + "..." : content;
+            analysis.append(String.format("%d. [%.1fmin] %s: %s\n", msg.seq(), sessionMins, role, preview));
         }
         
         return analysis.toString();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,214 @@
+package com.example.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+/**
+ * Answers requests from an {@link LlmTrace} instead of the upstream, with the recorded latency
+ * scaled by {@code replay-speed} (1 keeps the original timing, 0 answers at once). The response
+ * bodies go through the same parsers as live ones.
+ * <p>
+ * A request is matched to a recorded call with the same body hash. Prompts that contain times
+ * differ between runs, so a request without an exact match gets the next unused call of the same
+ * purpose in recorded order, starting over once a purpose's calls are used up.
+ * <p>
+ * The attempt timeout is enforced in wall-clock time against the scaled latency, as a live call
+ * would be.
+ */
+@Component
+public class ReplayTransport implements LlmTransport {
+
+    @Autowired
+    private LlmTrace trace;
+
+    @Value("${psykologen.transport.replay-speed:1.0}")
+    private double speed;
+
+    private final MeterRegistry registry;
+    private final Map<String, Deque<Recorded>> byHash = new HashMap<>();
+    private final Map<String, List<Recorded>> byPurpose = new HashMap<>();
+    private final Map<String, Integer> nextByPurpose = new HashMap<>();
+    private ScheduledExecutorService scheduler;
+    private boolean loaded = false;
+
+    public ReplayTransport(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    private static final class Recorded {
+        final LlmTrace.Call call;
+        boolean used = false;
+
+        Recorded(LlmTrace.Call call) {
+            this.call = call;
+        }
+    }
+
+    @Override
+    public CompletableFuture<ChatCompletion> complete(CallPurpose purpose, ModelRoute route, byte[] requestBody,
+                                                      Duration timeout) {
+        LlmTrace.Call call = next(purpose, requestBody);
+        CompletableFuture<ChatCompletion> result = new CompletableFuture<>();
+        List<ScheduledFuture<?>> tasks = new ArrayList<>();
+        tasks.add(schedule(call.latencyMs(), () -> {
+            try {
+                if (call.status() != 200) {
+                    throw failure(call);
+                }
+                result.complete(ChatResponseParser.parse(call.body().getBytes(StandardCharsets.UTF_8)));
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        }));
+        return bounded(result, tasks, timeout);
+    }
+
+    /** Hands the recorded lines to the parser spread evenly from the first delta to the end of the call. */
+    @Override
+    public CompletableFuture<ChatCompletion> stream(CallPurpose purpose, ModelRoute route, byte[] requestBody,
+                                                    Duration timeout, Consumer<String> onDelta) {
+        LlmTrace.Call call = next(purpose, requestBody);
+        CompletableFuture<ChatCompletion> result = new CompletableFuture<>();
+        List<ScheduledFuture<?>> tasks = new ArrayList<>();
+        if (call.status() != 200) {
+            tasks.add(schedule(call.latencyMs(), () -> result.completeExceptionally(failure(call))));
+            return bounded(result, tasks, timeout);
+        }
+        StreamingResponseParser parser = new StreamingResponseParser(onDelta);
+        parser.onSubscribe(NO_BACKPRESSURE);
+        String[] lines = call.body().split("\n");
+        long firstMs = call.firstDeltaMs() > 0 ? call.firstDeltaMs() : call.latencyMs();
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            tasks.add(schedule(firstMs + (call.latencyMs() - firstMs) * i / lines.length, () -> {
+                if (!result.isDone()) {
+                    try {
+                        parser.onNext(line);
+                    } catch (RuntimeException e) {
+                        result.completeExceptionally(e);
+                    }
+                }
+            }));
+        }
+        tasks.add(schedule(call.latencyMs(), () -> result.complete(parser.result())));
+        return bounded(result, tasks, timeout);
+    }
+
+    /**
+     * Fails the call the way {@link java.net.http.HttpClient} does once the attempt timeout has
+     * passed, and drops its outstanding tasks when it is done, so a cancelled call (a lost hedge
+     * or an abandoned fallback) sends no further deltas.
+     */
+    private CompletableFuture<ChatCompletion> bounded(CompletableFuture<ChatCompletion> result,
+                                                      List<ScheduledFuture<?>> tasks, Duration timeout) {
+        ScheduledFuture<?> timer = scheduler.schedule(
+                () -> result.completeExceptionally(new HttpTimeoutException("request timed out")),
+                timeout.toNanos(), TimeUnit.NANOSECONDS);
+        result.whenComplete((response, error) -> {
+            timer.cancel(false);
+            tasks.forEach(task -> task.cancel(false));
+        });
+        return result;
+    }
+
+    private synchronized LlmTrace.Call next(CallPurpose purpose, byte[] requestBody) {
+        if (!loaded) {
+            load();
+        }
+        Deque<Recorded> exact = byHash.get(LlmTrace.hash(requestBody));
+        while (exact != null && !exact.isEmpty()) {
+            Recorded recorded = exact.poll();
+            if (!recorded.used) {
+                recorded.used = true;
+                count(purpose, "exact");
+                return recorded.call;
+            }
+        }
+        List<Recorded> calls = byPurpose.get(purpose.tag());
+        if (calls == null) {
+            count(purpose, "missing");
+            throw new IllegalStateException("No " + purpose.tag() + " calls recorded in " + trace.getPath());
+        }
+        int index = nextByPurpose.getOrDefault(purpose.tag(), 0);
+        for (int i = 0; i < calls.size(); i++) {
+            Recorded recorded = calls.get((index + i) % calls.size());
+            if (!recorded.used) {
+                recorded.used = true;
+                nextByPurpose.put(purpose.tag(), (index + i + 1) % calls.size());
+                count(purpose, "ordered");
+                return recorded.call;
+            }
+        }
+        // Every call of this purpose has been served; go round again
+        calls.forEach(recorded -> recorded.used = false);
+        Recorded recorded = calls.get(index);
+        recorded.used = true;
+        nextByPurpose.put(purpose.tag(), (index + 1) % calls.size());
+        count(purpose, "repeated");
+        return recorded.call;
+    }
+
+    private void load() {
+        for (LlmTrace.Call call : trace.read()) {
+            Recorded recorded = new Recorded(call);
+            byHash.computeIfAbsent(call.hash(), hash -> new ArrayDeque<>()).add(recorded);
+            byPurpose.computeIfAbsent(call.purpose(), purpose -> new ArrayList<>()).add(recorded);
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "llm-replay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        loaded = true;
+    }
+
+    /** Tasks run in order of their delay on one thread, so the lines of a stream stay in order. */
+    private ScheduledFuture<?> schedule(long recordedMs, Runnable task) {
+        long delayMicros = (long) (recordedMs * 1000 * speed);
+        return scheduler.schedule(task, delayMicros, TimeUnit.MICROSECONDS);
+    }
+
+    private void count(CallPurpose purpose, String match) {
+        Counter.builder("psykologen.transport.replayed")
+                .description("Calls answered from the LLM trace, by how the recorded call was matched")
+                .tag("purpose", purpose.tag())
+                .tag("match", match)
+                .register(registry)
+                .increment();
+    }
+
+    private static Exception failure(LlmTrace.Call call) {
+        return call.status() == 0 ? new IOException(call.body()) : new OpenAIException(call.status(), call.body(), null);
+    }
+
+    private static final Flow.Subscription NO_BACKPRESSURE = new Flow.Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    };
+}
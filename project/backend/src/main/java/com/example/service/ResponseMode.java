@@ -0,0 +1,16 @@
+package com.example.service;
+
+public enum ResponseMode {
+    /** Extract this turn's thoughts first, then let Erik answer with them. */
+    SEQUENTIAL,
+    /** Let Erik answer with the previous turn's thoughts while this turn's thoughts are extracted concurrently. */
+    PIPELINED;
+
+    public String tag() {
+        return name().toLowerCase();
+    }
+
+    public static ResponseMode parse(String value, ResponseMode fallback) {
+        return ModeParser.parseMode(ResponseMode.class, value, fallback);
+    }
+}
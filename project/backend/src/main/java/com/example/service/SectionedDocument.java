@@ -0,0 +1,144 @@
+package com.example.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A profile or plan as bullet items under the fixed sections of its {@link DocumentType}.
+ * The stored form is the markdown from {@link #toMarkdown()}, which {@link #parse} reads back,
+ * so no separate structured copy needs to be kept or journaled.
+ * <p>
+ * For the update prompt every item gets a number ({@link #toPromptListing()}); a
+ * {@link DocumentDelta} refers to items by that number and {@link #apply} merges it locally.
+ */
+public final class SectionedDocument {
+    private final DocumentType type;
+    private final Map<String, List<String>> sections;
+
+    private SectionedDocument(DocumentType type, Map<String, List<String>> sections) {
+        this.type = type;
+        this.sections = sections;
+    }
+
+    public static SectionedDocument empty(DocumentType type) {
+        Map<String, List<String>> sections = new LinkedHashMap<>();
+        for (String section : type.sections()) {
+            sections.put(section, new ArrayList<>());
+        }
+        return new SectionedDocument(type, sections);
+    }
+
+    /**
+     * Reads a document written by {@link #toMarkdown()}. Free-form markdown (from before delta
+     * updates) is read leniently: headings are matched to the closest section and every other
+     * non-empty line becomes an item.
+     */
+    public static SectionedDocument parse(DocumentType type, String markdown) {
+        SectionedDocument document = empty(type);
+        if (markdown == null || markdown.isBlank()) {
+            return document;
+        }
+        String current = type.sections().get(type.sections().size() - 1);
+        for (String line : markdown.split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || (trimmed.startsWith("# ") && !trimmed.startsWith("##"))) {
+                continue;
+            }
+            if (trimmed.startsWith("##")) {
+                current = document.resolveSection(trimmed.replaceFirst("^#+", "").trim());
+                continue;
+            }
+            String item = trimmed.replaceFirst("^([-*]|\\d+\\.)\\s+", "").trim();
+            if (!item.isEmpty() && !(item.startsWith("[") && item.endsWith("]"))) {
+                document.sections.get(current).add(item);
+            }
+        }
+        return document;
+    }
+
+    public String toMarkdown() {
+        StringBuilder markdown = new StringBuilder("# ").append(type.title()).append('\n');
+        sections.forEach((section, items) -> {
+            if (!items.isEmpty()) {
+                markdown.append("\n## ").append(section).append('\n');
+                items.forEach(item -> markdown.append("- ").append(item).append('\n'));
+            }
+        });
+        return markdown.toString();
+    }
+
+    /** Every section with its items numbered from 1 across the document, empty sections included. */
+    public String toPromptListing() {
+        StringBuilder listing = new StringBuilder();
+        int id = 1;
+        for (Map.Entry<String, List<String>> section : sections.entrySet()) {
+            listing.append("## ").append(section.getKey()).append('\n');
+            if (section.getValue().isEmpty()) {
+                listing.append("(tomt)\n");
+            }
+            for (String item : section.getValue()) {
+                listing.append('[').append(id++).append("] ").append(item).append('\n');
+            }
+        }
+        return listing.toString();
+    }
+
+    /**
+     * Returns a new document with the delta merged in. Ids refer to {@link #toPromptListing()}
+     * of this document; unknown ids are ignored, and an item both updated and removed is removed.
+     */
+    public SectionedDocument apply(DocumentDelta delta) {
+        List<String> sectionOf = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        sections.forEach((section, items) -> items.forEach(item -> {
+            sectionOf.add(section);
+            texts.add(item);
+        }));
+
+        for (DocumentDelta.Change change : delta.update()) {
+            int index = change.id() - 1;
+            if (index >= 0 && index < texts.size() && !change.text().isBlank()) {
+                texts.set(index, change.text().trim());
+            }
+        }
+        for (int id : delta.remove()) {
+            if (id >= 1 && id <= texts.size()) {
+                texts.set(id - 1, null);
+            }
+        }
+
+        SectionedDocument merged = empty(type);
+        for (int i = 0; i < texts.size(); i++) {
+            if (texts.get(i) != null) {
+                merged.sections.get(sectionOf.get(i)).add(texts.get(i));
+            }
+        }
+        for (DocumentDelta.Addition addition : delta.add()) {
+            String text = addition.text().trim();
+            List<String> target = merged.sections.get(merged.resolveSection(addition.section()));
+            if (!text.isEmpty() && !target.contains(text)) {
+                target.add(text);
+            }
+        }
+        return merged;
+    }
+
+    /** The section whose name matches {@code name}, ignoring case and trailing remarks; the last section otherwise. */
+    private String resolveSection(String name) {
+        String wanted = normalize(name);
+        for (String section : sections.keySet()) {
+            String candidate = normalize(section);
+            if (!wanted.isEmpty() && (wanted.startsWith(candidate) || candidate.startsWith(wanted))) {
+                return section;
+            }
+        }
+        return type.sections().get(type.sections().size() - 1);
+    }
+
+    private static String normalize(String name) {
+        return name == null ? "" : name.replaceAll("\\(.*?\\)", "").trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.service;
+
+public class SessionNotFoundException extends RuntimeException {
+    public SessionNotFoundException(String sessionId) {
+        super("Unknown or expired session: " + sessionId);
+    }
+}
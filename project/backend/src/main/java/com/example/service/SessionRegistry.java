@@ -0,0 +1,131 @@
+package com.example.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+public class SessionRegistry {
+    private final Map<String, ConversationSession> sessions = new ConcurrentHashMap<>();
+
+    @Autowired
+    private BackgroundUpdateScheduler backgroundScheduler;
+
+    @Autowired
+    private DocumentStore documentStore;
+
+    @Value("${psykologen.analysis-mode:separate}")
+    private String defaultAnalysisMode;
+
+    @Value("${psykologen.sessions.max-active:500}")
+    private int maxActiveSessions;
+
+    @Value("${psykologen.sessions.idle-ttl:PT30M}")
+    private Duration idleTtl;
+
+    @Value("${psykologen.sessions.max-history-messages:200}")
+    private int maxHistoryMessages;
+
+    @Value("${psykologen.sessions.max-internal-thoughts:100}")
+    private int maxInternalThoughts;
+
+    @Value("${psykologen.thoughts.similarity-threshold:0.5}")
+    private double thoughtSimilarityThreshold;
+
+    @Value("${psykologen.thoughts.half-life-turns:6}")
+    private double thoughtHalfLifeTurns;
+
+    @Value("${psykologen.thoughts.token-budget:400}")
+    private int thoughtTokenBudget;
+
+    public SessionRegistry(MeterRegistry registry) {
+        Gauge.builder("psykologen.sessions.active", sessions, Map::size)
+                .description("Conversation sessions currently held in memory")
+                .register(registry);
+    }
+
+    public ConversationSession create(AnalysisMode analysisMode) {
+        return add(UUID.randomUUID().toString(), analysisMode);
+    }
+
+    /**
+     * Brings back the sessions whose profile or plan was replayed from the document journal, so
+     * they can be read and continued after a restart. Only the documents are journaled: a restored
+     * session starts with an empty conversation and the configured analysis mode, and expires
+     * after the idle TTL like any other.
+     */
+    @PostConstruct
+    void restore() {
+        AnalysisMode analysisMode = AnalysisMode.parse(defaultAnalysisMode, AnalysisMode.SEPARATE);
+        documentStore.sessionIds().forEach(sessionId -> add(sessionId, analysisMode));
+    }
+
+    private ConversationSession add(String sessionId, AnalysisMode analysisMode) {
+        synchronized (sessions) {
+            while (sessions.size() >= maxActiveSessions) {
+                evictLeastRecentlyUsed();
+            }
+            ConversationSession session = new ConversationSession(
+                    sessionId, maxHistoryMessages, new ThoughtStore(maxInternalThoughts,
+                    thoughtSimilarityThreshold, thoughtHalfLifeTurns, thoughtTokenBudget), analysisMode);
+            sessions.put(session.getId(), session);
+            return session;
+        }
+    }
+
+    public ConversationSession get(String sessionId) {
+        ConversationSession session = sessionId == null ? null : sessions.get(sessionId);
+        if (session == null) {
+            throw new SessionNotFoundException(sessionId);
+        }
+        session.touch();
+        return session;
+    }
+
+    public ConversationSession find(String sessionId) {
+        ConversationSession session = sessionId == null ? null : sessions.get(sessionId);
+        if (session != null) {
+            session.touch();
+        }
+        return session;
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    @Scheduled(fixedDelayString = "${psykologen.sessions.sweep-interval:PT1M}")
+    public void evictIdleSessions() {
+        long cutoff = System.currentTimeMillis() - idleTtl.toMillis();
+        sessions.values().stream()
+                .filter(session -> session.getLastAccessTime() < cutoff)
+                .map(ConversationSession::getId)
+                .toList()
+                .forEach(this::remove);
+        documentStore.removeStale(sessions.keySet(), cutoff);
+    }
+
+    private void evictLeastRecentlyUsed() {
+        sessions.values().stream()
+                .min(Comparator.comparingLong(ConversationSession::getLastAccessTime))
+                .ifPresent(session -> remove(session.getId()));
+    }
+
+    private void remove(String sessionId) {
+        ConversationSession session = sessions.remove(sessionId);
+        if (session != null) {
+            backgroundScheduler.discard(sessionId);
+            documentStore.remove(sessionId);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.service;
+
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+/**
+ * Line subscriber for a chat-completions event stream. Forwards each content delta as it
+ * arrives and assembles the reply into a {@link ChatCompletion}.
+ */
+class StreamingResponseParser implements Flow.Subscriber<String> {
+    private final Consumer<String> onDelta;
+    private final StringBuilder transcript;
+    private final StringBuilder content = new StringBuilder();
+    private int promptTokens = 0;
+    private int completionTokens = 0;
+    private int cachedTokens = 0;
+    private boolean done = false;
+
+    StreamingResponseParser(Consumer<String> onDelta) {
+        this(onDelta, null);
+    }
+
+    /** Also appends every received line to {@code transcript}, if given, for an {@link LlmTrace}. */
+    StreamingResponseParser(Consumer<String> onDelta, StringBuilder transcript) {
+        this.onDelta = onDelta;
+        this.transcript = transcript;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(String line) {
+        if (transcript != null) {
+            transcript.append(line).append('\n');
+        }
+        if (done || !line.startsWith("data:")) {
+            return;
+        }
+        String data = line.substring(5).trim();
+        if (data.equals("[DONE]")) {
+            done = true;
+            return;
+        }
+        ChatCompletion chunk = ChatResponseParser.parseChunk(data);
+        if (chunk.promptTokens() > 0 || chunk.completionTokens() > 0) {
+            promptTokens = chunk.promptTokens();
+            completionTokens = chunk.completionTokens();
+            cachedTokens = chunk.cachedTokens();
+        }
+        if (chunk.content() != null && !chunk.content().isEmpty()) {
+            content.append(chunk.content());
+            onDelta.accept(chunk.content());
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        // Surfaced through the response future
+    }
+
+    @Override
+    public void onComplete() {
+    }
+
+    ChatCompletion result() {
+        return new ChatCompletion(content.toString(), promptTokens, completionTokens, cachedTokens);
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Erik's internal thoughts for one session, kept small enough to go into every turn's prompts.
+ * <ul>
+ *   <li>A thought whose character shingles overlap a stored thought's by at least
+ *       {@code similarityThreshold} (Jaccard) reinforces that thought instead of being added.</li>
+ *   <li>A thought scores by recency, halving every {@code halfLifeTurns} turns since it was last
+ *       had, times a weight that grows with the number of times it was reinforced.</li>
+ *   <li>{@link #forPrompt()} returns the best-scoring thoughts that fit within {@code tokenBudget},
+ *       in the order they were first had. A full store drops its lowest-scoring thought.</li>
+ * </ul>
+ */
+public final class ThoughtStore {
+    private static final int SHINGLE_LENGTH = 4;
+
+    private final int maxThoughts;
+    private final double similarityThreshold;
+    private final double halfLifeTurns;
+    private final int tokenBudget;
+    private final List<Thought> thoughts = new ArrayList<>();
+    private int currentTurn = 0;
+
+    public ThoughtStore(int maxThoughts, double similarityThreshold, double halfLifeTurns, int tokenBudget) {
+        this.maxThoughts = maxThoughts;
+        this.similarityThreshold = similarityThreshold;
+        this.halfLifeTurns = halfLifeTurns;
+        this.tokenBudget = tokenBudget;
+    }
+
+    private static final class Thought {
+        final String text;
+        final int[] shingles;
+        final int tokens;
+        int lastTurn;
+        int reinforcements = 0;
+
+        Thought(String text, int[] shingles, int turn) {
+            this.text = text;
+            this.shingles = shingles;
+            this.tokens = TokenEstimator.estimate("- " + text + "\n");
+            this.lastTurn = turn;
+        }
+    }
+
+    /**
+     * Stores a thought had during {@code turn}, or reinforces the stored thought it nearly
+     * duplicates. Returns whether it was stored as a new thought.
+     */
+    public synchronized boolean add(String text, int turn) {
+        String thought = text == null ? "" : text.trim();
+        if (thought.isEmpty()) {
+            return false;
+        }
+        currentTurn = Math.max(currentTurn, turn);
+        int[] shingles = shingles(thought);
+        for (Thought existing : thoughts) {
+            if (similarity(existing.shingles, shingles) >= similarityThreshold) {
+                existing.reinforcements++;
+                existing.lastTurn = Math.max(existing.lastTurn, turn);
+                return false;
+            }
+        }
+        if (thoughts.size() >= maxThoughts) {
+            thoughts.remove(thoughts.stream().min(Comparator.comparingDouble(this::score)).orElseThrow());
+        }
+        thoughts.add(new Thought(thought, shingles, turn));
+        return true;
+    }
+
+    /** The highest-scoring thoughts whose formatted lines fit the token budget, oldest first. */
+    public synchronized List<String> forPrompt() {
+        Thought[] ranked = thoughts.toArray(new Thought[0]);
+        Arrays.sort(ranked, Comparator.comparingDouble(this::score).reversed());
+        Set<Thought> chosen = new HashSet<>();
+        int tokens = 0;
+        for (Thought thought : ranked) {
+            if (tokens + thought.tokens <= tokenBudget) {
+                chosen.add(thought);
+                tokens += thought.tokens;
+            }
+        }
+        List<String> texts = new ArrayList<>(chosen.size());
+        for (Thought thought : thoughts) {
+            if (chosen.contains(thought)) {
+                texts.add(thought.text);
+            }
+        }
+        return texts;
+    }
+
+    private double score(Thought thought) {
+        double recency = Math.pow(0.5, (currentTurn - thought.lastTurn) / halfLifeTurns);
+        return recency * (1 + Math.log1p(thought.reinforcements));
+    }
+
+    /** Sorted, distinct hashes of the overlapping character 4-grams of the normalized text. */
+    static int[] shingles(String text) {
+        String normalized = " " + text.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{N}]+", " ").trim() + " ";
+        int count = Math.max(1, normalized.length() - SHINGLE_LENGTH + 1);
+        int[] hashes = new int[count];
+        for (int i = 0; i < count; i++) {
+            hashes[i] = normalized.substring(i, Math.min(normalized.length(), i + SHINGLE_LENGTH)).hashCode();
+        }
+        Arrays.sort(hashes);
+        int distinct = 0;
+        for (int i = 0; i < hashes.length; i++) {
+            if (i == 0 || hashes[i] != hashes[i - 1]) {
+                hashes[distinct++] = hashes[i];
+            }
+        }
+        return Arrays.copyOf(hashes, distinct);
+    }
+
+    /** Jaccard similarity of two shingle sets from {@link #shingles}. */
+    static double similarity(int[] a, int[] b) {
+        int shared = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                shared++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        int union = a.length + b.length - shared;
+        return union == 0 ? 0 : (double) shared / union;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cheap local token estimate used to keep prompts within budget. Errs slightly on the high
+ * side for Swedish text, which tokenizes at roughly 3.5 characters per token.
+ */
+public final class TokenEstimator {
+    private static final int MESSAGE_OVERHEAD = 4;
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return (text.length() * 2 + 6) / 7;
+    }
+
+    public static int estimate(Map<String, Object> message) {
+        return MESSAGE_OVERHEAD + estimate((String) message.get("content"));
+    }
+
+    public static int estimate(ChatMessage message) {
+        return MESSAGE_OVERHEAD + estimate(message.content());
+    }
+
+    public static int estimate(List<Map<String, Object>> messages) {
+        int total = 0;
+        for (Map<String, Object> message : messages) {
+            total += estimate(message);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.service;
+
+/** How {@link OpenAIClient} reaches the LLM: live, live while recording a trace, or replaying a trace. */
+public enum TransportMode {
+    LIVE,
+    RECORD,
+    REPLAY;
+
+    public String tag() {
+        return name().toLowerCase();
+    }
+
+    public static TransportMode parse(String value, TransportMode fallback) {
+        return ModeParser.parseMode(TransportMode.class, value, fallback);
+    }
+}
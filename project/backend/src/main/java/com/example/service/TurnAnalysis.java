@@ -0,0 +1,35 @@
+package com.example.service;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of the fused per-turn analysis call:
+ * <pre>
+ * {"thoughts": ["..."], "profile": {"add": [...], "update": [...], "remove": [...]}, "plan": {...}}
+ * </pre>
+ * The profile and plan parts are {@link DocumentDelta}s with ids from each document's own listing.
+ */
+public record TurnAnalysis(List<String> thoughts, DocumentDelta profile, DocumentDelta plan) {
+
+    /** Parses the model's JSON; a missing part is read as no change. */
+    public static TurnAnalysis parse(String json) {
+        JsonObject root = DocumentDelta.parseObject(json, "Turn analysis");
+
+        List<String> thoughts = new ArrayList<>();
+        for (JsonElement element : DocumentDelta.array(root, "thoughts")) {
+            if (element.isJsonPrimitive() && !element.getAsString().isBlank()) {
+                thoughts.add(element.getAsString().trim().replaceFirst("^-\\s*", ""));
+            }
+        }
+        return new TurnAnalysis(thoughts, delta(root, DocumentType.PROFILE), delta(root, DocumentType.PLAN));
+    }
+
+    private static DocumentDelta delta(JsonObject root, DocumentType type) {
+        JsonElement element = root.get(type.tag());
+        return DocumentDelta.from(element != null && element.isJsonObject() ? element.getAsJsonObject() : new JsonObject());
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-turn latency, split by mode and by the phase of the turn (the whole user-visible turn,
+ * the thoughts call, the reply call and, for fused analysis, the analysis call after it).
+ * The mode is the {@link ResponseMode} tag, or {@code fused} for sessions using {@link AnalysisMode#FUSED}.
+ * Phases that fail without failing the turn, like pipelined thoughts, are counted as failures.
+ */
+@Component
+public class TurnMetrics {
+    private static final int WINDOW_SIZE = 1024;
+
+    private final Map<String, LatencyStats> stats = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> failures = new ConcurrentHashMap<>();
+    private final MeterRegistry registry;
+
+    public TurnMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void record(String mode, String phase, long latencyMs) {
+        stats.computeIfAbsent(mode + "." + phase, key -> new LatencyStats(WINDOW_SIZE))
+                .record(latencyMs);
+        Timer.builder("psykologen.turn.latency")
+                .description("User-visible turn latency and its phases")
+                .tag("mode", mode)
+                .tag("phase", phase)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(Duration.ofMillis(latencyMs));
+    }
+
+    public void recordFailure(String mode, String phase) {
+        failures.computeIfAbsent(mode + "." + phase, key -> new AtomicLong()).incrementAndGet();
+        Counter.builder("psykologen.turn.failures")
+                .description("Turn phases that failed without failing the turn")
+                .tag("mode", mode)
+                .tag("phase", phase)
+                .register(registry)
+                .increment();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        stats.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> result.put(entry.getKey(), entry.getValue().snapshot()));
+        if (!failures.isEmpty()) {
+            Map<String, Long> failed = new LinkedHashMap<>();
+            failures.entrySet().stream()
+                    .sorted(Map.Entry.comparingByKey())
+                    .forEach(entry -> failed.put(entry.getKey(), entry.getValue().get()));
+            result.put("failures", failed);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,328 @@
+package com.example.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Deadlines, retries, hedging and the circuit breaker around upstream LLM calls.
+ * <ul>
+ *   <li>Every call has a deadline per {@link CallPurpose} covering all its attempts.</li>
+ *   <li>429, 5xx and I/O failures are retried with full-jitter exponential backoff, or after the
+ *       {@code Retry-After} the upstream asked for, as long as the deadline allows it.</li>
+ *   <li>The reply call can be hedged: if it has not answered within the recent p95, a second
+ *       attempt is started and whichever answers first wins.</li>
+ * </ul>
+ * A streamed call is only retried or hedged until its first delta has been forwarded, so the
+ * client never sees text from two attempts.
+ */
+@Component
+public class UpstreamResilience {
+    private static final Map<CallPurpose, Duration> DEFAULT_DEADLINES = new EnumMap<>(Map.of(
+            CallPurpose.OPENING, Duration.ofSeconds(30),
+            CallPurpose.THOUGHTS, Duration.ofSeconds(30),
+            CallPurpose.REPLY, Duration.ofSeconds(45),
+            CallPurpose.PROFILE, Duration.ofSeconds(90),
+            CallPurpose.PLAN, Duration.ofSeconds(90),
+            CallPurpose.ANALYSIS, Duration.ofSeconds(90),
+            CallPurpose.SUMMARY, Duration.ofSeconds(90)));
+
+    /** One upstream attempt with the given time budget, forwarding deltas to {@code onDelta} when streaming. */
+    @FunctionalInterface
+    public interface Attempt {
+        CompletableFuture<ChatCompletion> send(Duration timeout, Consumer<String> onDelta);
+    }
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private CircuitBreaker circuitBreaker;
+
+    @Autowired
+    private OutboundLimiter limiter;
+
+    @Value("${psykologen.upstream.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${psykologen.upstream.backoff-base:PT0.25S}")
+    private Duration backoffBase;
+
+    @Value("${psykologen.upstream.backoff-max:PT4S}")
+    private Duration backoffMax;
+
+    @Value("${psykologen.upstream.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    @Value("${psykologen.upstream.hedge.quantile:0.95}")
+    private double hedgeQuantile;
+
+    @Value("${psykologen.upstream.hedge.min-delay:PT1S}")
+    private Duration hedgeMinDelay;
+
+    private final Map<CallPurpose, Duration> deadlines = new ConcurrentHashMap<>();
+    private final LatencyStats replyLatency = new LatencyStats(200);
+    private final MeterRegistry registry;
+
+    public UpstreamResilience(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public CompletableFuture<ChatCompletion> call(CallPurpose purpose, Consumer<String> onDelta, Attempt attempt) {
+        return start(new Call(purpose, attempt, onDelta, System.nanoTime() + deadlineFor(purpose).toNanos(), true));
+    }
+
+    /**
+     * A single attempt for an endpoint other than the primary one, within {@code timeout} or the
+     * purpose's deadline if that is {@code null}: not retried or hedged, and neither checked against
+     * nor counted by the circuit breaker.
+     */
+    public CompletableFuture<ChatCompletion> callOnce(CallPurpose purpose, Duration timeout, Consumer<String> onDelta,
+                                                      Attempt attempt) {
+        Duration deadline = timeout != null ? timeout : deadlineFor(purpose);
+        return start(new Call(purpose, attempt, onDelta, System.nanoTime() + deadline.toNanos(), false));
+    }
+
+    private CompletableFuture<ChatCompletion> start(Call call) {
+        CallPurpose purpose = call.purpose;
+        call.result.orTimeout(call.remainingNanos(), TimeUnit.NANOSECONDS);
+        call.result.whenComplete((response, error) -> {
+            call.inFlight.forEach(future -> future.cancel(true));
+            if (unwrap(error) instanceof TimeoutException) {
+                counter("psykologen.upstream.deadline_exceeded", purpose).increment();
+            }
+        });
+        runRound(call, 1);
+        return call.result;
+    }
+
+    private void runRound(Call call, int attemptNumber) {
+        if (call.result.isDone()) {
+            return;
+        }
+        sendHedged(call).whenComplete((response, error) -> {
+            if (error == null) {
+                call.result.complete(response);
+                return;
+            }
+            Throwable cause = unwrap(error);
+            long delayNanos = retryDelayNanos(cause, attemptNumber);
+            boolean retry = call.guarded
+                    && attemptNumber < maxAttempts
+                    && isUpstreamFault(cause)
+                    && !call.gate.started()
+                    && delayNanos < call.remainingNanos();
+            if (!retry) {
+                call.result.completeExceptionally(cause);
+                return;
+            }
+            counter("psykologen.upstream.retries", call.purpose).increment();
+            CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS)
+                    .execute(() -> runRound(call, attemptNumber + 1));
+        });
+    }
+
+    private CompletableFuture<ChatCompletion> sendHedged(Call call) {
+        CompletableFuture<ChatCompletion> first = sendOnce(call);
+        if (!hedgeEnabled || !call.guarded || call.purpose != CallPurpose.REPLY) {
+            return first;
+        }
+
+        CompletableFuture<ChatCompletion> round = new CompletableFuture<>();
+        AtomicInteger outstanding = new AtomicInteger(1);
+        BiConsumer<ChatCompletion, Throwable> settle = (response, error) -> {
+            if (error == null) {
+                round.complete(response);
+            } else if (outstanding.decrementAndGet() == 0) {
+                round.completeExceptionally(error);
+            }
+        };
+        first.whenComplete(settle);
+
+        long delayMs = replyLatency.percentile(hedgeQuantile, 20, hedgeMinDelay.toMillis());
+        CompletableFuture.delayedExecutor(Math.max(delayMs, hedgeMinDelay.toMillis()), TimeUnit.MILLISECONDS).execute(() -> {
+            // A hedge only adds load when calls are already queueing for the upstream
+            if (round.isDone() || call.result.isDone() || call.gate.started() || call.remainingNanos() <= 0
+                    || limiter.isQueued(CallPriority.INTERACTIVE)) {
+                return;
+            }
+            outstanding.incrementAndGet();
+            counter("psykologen.upstream.hedges", call.purpose).increment();
+            CompletableFuture<ChatCompletion> second = sendOnce(call);
+            second.whenComplete(settle);
+            second.thenRun(() -> {
+                if (!first.isDone() || first.isCompletedExceptionally()) {
+                    counter("psykologen.upstream.hedges_won", call.purpose).increment();
+                }
+            });
+            round.whenComplete((response, error) -> {
+                first.cancel(true);
+                second.cancel(true);
+            });
+        });
+        return round;
+    }
+
+    private CompletableFuture<ChatCompletion> sendOnce(Call call) {
+        if (call.guarded && !circuitBreaker.tryAcquire()) {
+            return CompletableFuture.failedFuture(new CircuitOpenException());
+        }
+        long start = System.nanoTime();
+        AtomicReference<CompletableFuture<ChatCompletion>> self = new AtomicReference<>();
+        Consumer<String> onDelta = call.gate.forAttempt(() -> {
+            CompletableFuture<ChatCompletion> attempt = self.get();
+            if (attempt != null) {
+                attempt.cancel(true);
+            }
+        });
+
+        CompletableFuture<ChatCompletion> attempt;
+        try {
+            attempt = call.attempt.send(Duration.ofNanos(Math.max(call.remainingNanos(), 1)), onDelta);
+        } catch (RuntimeException e) {
+            attempt = CompletableFuture.failedFuture(e);
+        }
+        self.set(attempt);
+        call.inFlight.add(attempt);
+        CompletableFuture<ChatCompletion> tracked = attempt;
+        attempt.whenComplete((response, error) -> {
+            call.inFlight.remove(tracked);
+            if (!call.guarded) {
+                return;
+            }
+            Throwable cause = unwrap(error);
+            if (error == null) {
+                circuitBreaker.onSuccess();
+                if (call.purpose == CallPurpose.REPLY) {
+                    replyLatency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
+            } else if (isUpstreamFault(cause)) {
+                circuitBreaker.onFailure();
+            } else if (cause instanceof CancellationException || cause instanceof LimiterRejectedException) {
+                circuitBreaker.onIgnored();
+            } else {
+                // The upstream answered, just not with something we could use
+                circuitBreaker.onSuccess();
+            }
+        });
+        return attempt;
+    }
+
+    private long retryDelayNanos(Throwable cause, int attemptNumber) {
+        if (cause instanceof OpenAIException openAIException && openAIException.getRetryAfter() != null) {
+            return openAIException.getRetryAfter().toNanos();
+        }
+        long ceiling = Math.min(backoffMax.toNanos(), backoffBase.toNanos() << Math.min(attemptNumber - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private Duration deadlineFor(CallPurpose purpose) {
+        return deadlines.computeIfAbsent(purpose, key -> {
+            String value = environment.getProperty("psykologen.upstream.deadline." + key.tag());
+            return value != null ? DurationStyle.detectAndParse(value) : DEFAULT_DEADLINES.get(key);
+        });
+    }
+
+    private Counter counter(String name, CallPurpose purpose) {
+        return Counter.builder(name).tag("purpose", purpose.tag()).register(registry);
+    }
+
+    static boolean isUpstreamFault(Throwable cause) {
+        if (cause instanceof OpenAIException openAIException) {
+            int status = openAIException.getStatusCode();
+            return status == 429 || status >= 500;
+        }
+        return cause instanceof IOException;
+    }
+
+    static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    /** Returns {@code dependent}, arranging for {@code source} to be cancelled when it is. */
+    static <T> CompletableFuture<T> propagateCancellation(CompletableFuture<T> dependent, CompletableFuture<?> source) {
+        dependent.whenComplete((result, error) -> {
+            if (dependent.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+        return dependent;
+    }
+
+    private static final class Call {
+        final CallPurpose purpose;
+        final Attempt attempt;
+        final DeltaGate gate;
+        final long deadlineNanos;
+        final boolean guarded;
+        final CompletableFuture<ChatCompletion> result = new CompletableFuture<>();
+        final Set<CompletableFuture<ChatCompletion>> inFlight = ConcurrentHashMap.newKeySet();
+
+        Call(CallPurpose purpose, Attempt attempt, Consumer<String> onDelta, long deadlineNanos, boolean guarded) {
+            this.purpose = purpose;
+            this.attempt = attempt;
+            this.gate = new DeltaGate(onDelta);
+            this.deadlineNanos = deadlineNanos;
+            this.guarded = guarded;
+        }
+
+        long remainingNanos() {
+            return deadlineNanos - System.nanoTime();
+        }
+    }
+
+    /**
+     * Forwards deltas from whichever attempt produces one first and drops the others', cancelling
+     * an attempt as soon as it turns out to have lost.
+     */
+    private static final class DeltaGate {
+        private final Consumer<String> target;
+        private final AtomicReference<Object> owner = new AtomicReference<>();
+
+        DeltaGate(Consumer<String> target) {
+            this.target = target;
+        }
+
+        Consumer<String> forAttempt(Runnable cancel) {
+            if (target == null) {
+                return null;
+            }
+            Object token = new Object();
+            return delta -> {
+                if (owner.compareAndSet(null, token) || owner.get() == token) {
+                    target.accept(delta);
+                } else {
+                    cancel.run();
+                }
+            };
+        }
+
+        boolean started() {
+            return owner.get() != null;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.service;
+
+/**
+ * Immutable snapshot of a session document. {@code version} starts at 1 and increases by one
+ * with every write, so readers can tell whether they already have the latest content.
+ */
+public record VersionedDocument(String sessionId, DocumentType type, String content, long version, long updatedAt) {
+}
@@ -0,0 +1,76 @@
+package com.example.controller;
+
+import com.example.service.LlmTrace;
+import com.example.service.OpeningPool;
+import com.google.gson.Gson;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Replays a trace with two recorded openings and starts two sessions: each {@code /start} gets
+ * its own recorded opening, in recorded order, and nothing else draws from the trace.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class PsykologenControllerReplayTest {
+    private static final Gson GSON = new Gson();
+
+    @TempDir
+    static Path traceDir;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private OpeningPool openingPool;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @DynamicPropertySource
+    static void replay(DynamicPropertyRegistry properties) throws IOException {
+        Path trace = traceDir.resolve("trace.jsonl");
+        Files.write(trace, List.of(opening("Hej, jag är Erik."), opening("Välkommen, vad vill du prata om?")));
+        properties.add("psykologen.transport.mode", () -> "replay");
+        properties.add("psykologen.transport.trace-file", trace::toString);
+        properties.add("psykologen.transport.replay-speed", () -> "0");
+    }
+
+    @Test
+    void startTwiceServesTheRecordedOpeningsInOrder() {
+        assertEquals("Hej, jag är Erik.", start().get("message"));
+        assertEquals("Välkommen, vad vill du prata om?", start().get("message"));
+
+        assertEquals(0, openingPool.size());
+        assertEquals(2.0, registry.find("psykologen.transport.replayed").tag("purpose", "opening")
+                .counters().stream().mapToDouble(Counter::count).sum());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> start() {
+        Map<String, Object> response = restTemplate.postForObject("/api/psykologen/start", Map.of(), Map.class);
+        assertEquals(true, response.get("success"), () -> String.valueOf(response.get("error")));
+        return response;
+    }
+
+    private static String opening(String content) {
+        String body = GSON.toJson(Map.of(
+                "choices", List.of(Map.of("message", Map.of("role", "assistant", "content", content))),
+                "usage", Map.of("prompt_tokens", 100, "completion_tokens", 10)));
+        return GSON.toJson(new LlmTrace.Call("unmatched", "opening", 200, 5, 0, body));
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.service;
+
+import com.example.SystemPrompts;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** The hand-written serializer must produce the same JSON as building the request with Gson. */
+class ChatRequestSerializerTest {
+    private static final Gson GSON = new Gson();
+
+    private static final List<Map<String, Object>> MESSAGES = List.of(
+            Map.of("role", "system", "content", SystemPrompts.SYSTEM_PROMPT),
+            Map.of("role", "system", "content", "Ett annat systemmeddelande"),
+            Map.of("role", "user", "content", "Citat \"så här\", snedstreck \\ och <taggar> & tecken"),
+            Map.of("role", "assistant", "content", "Rad ett\nRad två\r\n\tindrag \b\f \u0001\u001f"),
+            Map.of("role", "user", "content", "Åäö ß € 中文 😀"));
+
+    @Test
+    void matchesGsonForAPlainRequest() {
+        Map<String, Object> expected = request("gpt-4o-mini");
+
+        assertSameJson(expected, ChatRequestSerializer.serialize("gpt-4o-mini", MESSAGES, false));
+    }
+
+    @Test
+    void matchesGsonForAStreamedRequestWithMaxTokens() {
+        Map<String, Object> expected = request("gpt-4o");
+        expected.put("max_tokens", 200);
+        expected.put("stream", true);
+        expected.put("stream_options", Map.of("include_usage", true));
+
+        assertSameJson(expected, ChatRequestSerializer.serialize("gpt-4o", MESSAGES, true, false, 200));
+    }
+
+    @Test
+    void matchesGsonForAJsonObjectRequest() {
+        Map<String, Object> expected = request("gpt-4o-mini");
+        expected.put("response_format", Map.of("type", "json_object"));
+
+        assertSameJson(expected, ChatRequestSerializer.serialize("gpt-4o-mini", MESSAGES, false, true, 0));
+    }
+
+    @Test
+    void reusedBufferDoesNotLeakBetweenRequests() {
+        ChatRequestSerializer.serialize("gpt-4o-mini", MESSAGES, true);
+        List<Map<String, Object>> single = List.of(Map.of("role", "user", "content", "Hej"));
+
+        assertEquals("{\"model\":\"gpt-4o-mini\",\"messages\":[{\"role\":\"user\",\"content\":\"Hej\"}]}",
+                new String(ChatRequestSerializer.serialize("gpt-4o-mini", single, false), StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, Object> request(String model) {
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("model", model);
+        request.put("messages", MESSAGES);
+        return request;
+    }
+
+    private static void assertSameJson(Map<String, Object> expected, byte[] actual) {
+        JsonElement gson = JsonParser.parseString(GSON.toJson(expected));
+        assertEquals(gson, JsonParser.parseString(new String(actual, StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ChatResponseParserTest {
+
+    @Test
+    void readsContentAndUsageAndSkipsEverythingElse() {
+        String body = """
+                {"id": "chatcmpl-1", "object": "chat.completion", "created": 1,
+                 "choices": [{"index": 0, "message": {"role": "assistant", "content": "Hej \\"du\\"\\n😀",
+                                                      "tool_calls": [{"id": "x", "function": {}}]},
+                              "logprobs": null, "finish_reason": "stop"},
+                             {"index": 1, "message": {"content": "Andra valet"}}],
+                 "usage": {"prompt_tokens": 120, "completion_tokens": 30,
+                           "prompt_tokens_details": {"audio_tokens": 0, "cached_tokens": 64},
+                           "completion_tokens_details": {"reasoning_tokens": 0}},
+                 "system_fingerprint": "fp"}""";
+
+        assertEquals(new ChatCompletion("Hej \"du\"\n😀", 120, 30, 64),
+                ChatResponseParser.parse(body.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void readsAStreamChunkDelta() {
+        ChatCompletion chunk = ChatResponseParser.parseChunk(
+                "{\"choices\":[{\"index\":0,\"delta\":{\"content\":\"Hur mår\"},\"finish_reason\":null}]}");
+
+        assertEquals(new ChatCompletion("Hur mår", 0, 0, 0), chunk);
+    }
+
+    @Test
+    void readsTheFinalUsageChunkWithoutChoices() {
+        ChatCompletion chunk = ChatResponseParser.parseChunk(
+                "{\"choices\":[],\"usage\":{\"prompt_tokens\":80,\"completion_tokens\":12,\"prompt_tokens_details\":null}}");
+
+        assertNull(chunk.content());
+        assertEquals(80, chunk.promptTokens());
+        assertEquals(12, chunk.completionTokens());
+        assertEquals(0, chunk.cachedTokens());
+    }
+}
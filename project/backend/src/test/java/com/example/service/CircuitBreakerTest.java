@@ -0,0 +1,121 @@
+package com.example.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    @Test
+    void staysClosedBelowTheMinimumNumberOfCalls() {
+        CircuitBreaker breaker = breaker(Duration.ofHours(1));
+
+        fail(breaker, 3);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void opensAtTheFailureRateAndRejectsUntilTheOpenDurationHasPassed() {
+        CircuitBreaker breaker = breaker(Duration.ofHours(1));
+
+        succeed(breaker, 2);
+        fail(breaker, 2);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(1L, breaker.getStats().get("rejected"));
+    }
+
+    @Test
+    void onlyCountsTheOutcomesInTheWindow() {
+        CircuitBreaker breaker = breaker(Duration.ofHours(1));
+
+        fail(breaker, 1);
+        succeed(breaker, 6);
+        fail(breaker, 3);
+
+        // The first failure has left the six-call window, so three of six failed: exactly the threshold
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(6, breaker.getStats().get("recentCalls"));
+        assertEquals(3, breaker.getStats().get("recentFailures"));
+    }
+
+    @Test
+    void letsOneProbeThroughWhenHalfOpenAndClosesOnItsSuccess() {
+        CircuitBreaker breaker = breaker(Duration.ZERO);
+        fail(breaker, 4);
+
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getStats().get("recentCalls"));
+    }
+
+    @Test
+    void reopensWhenTheProbeFails() {
+        CircuitBreaker breaker = breaker(Duration.ZERO);
+        fail(breaker, 4);
+
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void anIgnoredProbeFreesTheSlotForAnotherOne() {
+        CircuitBreaker breaker = breaker(Duration.ZERO);
+        fail(breaker, 4);
+
+        assertTrue(breaker.tryAcquire());
+        breaker.onIgnored();
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void neverRejectsWhenDisabled() {
+        CircuitBreaker breaker = breaker(Duration.ofHours(1));
+        ReflectionTestUtils.setField(breaker, "enabled", false);
+
+        fail(breaker, 6);
+
+        assertTrue(breaker.tryAcquire());
+    }
+
+    /** Window of six calls, opening at half of at least four failing. */
+    private static CircuitBreaker breaker(Duration openDuration) {
+        CircuitBreaker breaker = new CircuitBreaker(6, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(breaker, "enabled", true);
+        ReflectionTestUtils.setField(breaker, "failureRateThreshold", 0.5);
+        ReflectionTestUtils.setField(breaker, "minimumCalls", 4);
+        ReflectionTestUtils.setField(breaker, "openDuration", openDuration);
+        return breaker;
+    }
+
+    private static void succeed(CircuitBreaker breaker, int calls) {
+        for (int i = 0; i < calls; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onSuccess();
+        }
+    }
+
+    private static void fail(CircuitBreaker breaker, int calls) {
+        for (int i = 0; i < calls; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SectionedDocumentTest {
+
+    @Test
+    void appliesAParsedDeltaAndReadsItsMarkdownBack() {
+        SectionedDocument profile = SectionedDocument.parse(DocumentType.PROFILE, """
+                # PATIENT-PROFIL
+
+                ## Grundläggande Information
+                - 34 år, bor i Göteborg
+
+                ## Problem & Utmaningar
+                - Sover dåligt
+                - Stress på jobbet
+                """);
+        assertEquals("""
+                ## Grundläggande Information
+                [1] 34 år, bor i Göteborg
+                ## Problem & Utmaningar
+                [2] Sover dåligt
+                [3] Stress på jobbet
+                ## Personlighet & Beteende
+                (tomt)
+                ## Mål & Drömmar
+                (tomt)
+                ## Övriga Noteringar
+                (tomt)
+                """, profile.toPromptListing());
+
+        DocumentDelta delta = DocumentDelta.parse("""
+                ```json
+                {"add": [{"section": "mål & drömmar (långsiktigt)", "text": " Vill byta jobb "}],
+                 "update": [{"id": "[2]", "text": "Sover dåligt sedan i våras"}],
+                 "remove": [3, {"id": 9}]}
+                ```""");
+        assertEquals(List.of(new DocumentDelta.Addition("mål & drömmar (långsiktigt)", " Vill byta jobb ")), delta.add());
+        assertEquals(List.of(new DocumentDelta.Change(2, "Sover dåligt sedan i våras")), delta.update());
+        assertEquals(List.of(3, 9), delta.remove());
+
+        SectionedDocument updated = profile.apply(delta);
+        String expected = """
+                # PATIENT-PROFIL
+
+                ## Grundläggande Information
+                - 34 år, bor i Göteborg
+
+                ## Problem & Utmaningar
+                - Sover dåligt sedan i våras
+
+                ## Mål & Drömmar
+                - Vill byta jobb
+                """;
+        assertEquals(expected, updated.toMarkdown());
+        assertEquals(expected, SectionedDocument.parse(DocumentType.PROFILE, expected).toMarkdown());
+    }
+
+    @Test
+    void removesAnItemThatIsAlsoUpdatedAndSkipsDuplicateAdditions() {
+        SectionedDocument plan = SectionedDocument.empty(DocumentType.PLAN).apply(DocumentDelta.parse(
+                "{\"add\": [{\"section\": \"Fokusområden\", \"text\": \"Sömn\"}]}"));
+
+        SectionedDocument updated = plan.apply(DocumentDelta.parse("""
+                {"add": [{"section": "Fokusområden", "text": "Sömn"}, {"section": "Okänd", "text": "Ring tillbaka"}],
+                 "update": [{"id": 1, "text": "Sömn och vila"}],
+                 "remove": [1]}"""));
+
+        assertEquals("# SESSIONSPLAN\n\n## Fokusområden\n- Sömn\n\n## Anteckningar för Erik\n- Ring tillbaka\n",
+                updated.toMarkdown());
+    }
+
+    @Test
+    void readsFreeFormMarkdownLeniently() {
+        SectionedDocument plan = SectionedDocument.parse(DocumentType.PLAN, """
+                # SESSIONSPLAN
+                ### NÄSTA STEG (vecka 2)
+                1. Sömndagbok
+                * Andningsövning
+                [inget ännu]
+                Lös rad utan rubrik
+                """);
+
+        assertEquals("# SESSIONSPLAN\n\n## Nästa Steg\n- Sömndagbok\n- Andningsövning\n- Lös rad utan rubrik\n",
+                plan.toMarkdown());
+    }
+}
@@ -1,6 +1,6 @@
 import { Injectable } from '@angular/core';
 import { HttpClient } from '@angular/common/http';
-import { Observable } from 'rxjs';
+import { Observable, tap } from 'rxjs';
 
 export interface Message {
   role: string;
@@ -16,6 +16,7 @@ export interface ConversationResponse {
 
 export interface MessageResponse {
   success: boolean;
+  sessionId?: string;
   message: string;
   role: string;
   sessionComplete?: boolean;
@@ -36,27 +37,43 @@ export interface PlanResponse {
 })
 export class ApiService {
   private baseUrl = 'http://localhost:8080/api/psykologen';
+  private sessionKey = 'psykologen.sessionId';
 
   constructor(private http: HttpClient) { }
 
+  get sessionId(): string | null {
+    return sessionStorage.getItem(this.sessionKey);
+  }
+
   startConversation(): Observable<MessageResponse> {
-    return this.http.post<MessageResponse>(`${this.baseUrl}/start`, {});
+    return this.http.post<MessageResponse>(`${this.baseUrl}/start`, {}).pipe(
+      tap(response => {
+        if (response.success && response.sessionId) {
+          sessionStorage.setItem(this.sessionKey, response.sessionId);
+        }
+      })
+    );
   }
 
   sendMessage(message: string): Observable<MessageResponse> {
-    return this.http.post<MessageResponse>(`${this.baseUrl}/message`, { message });
+    return this.http.post<MessageResponse>(`${this.baseUrl}/message`, { sessionId: this.sessionId, message });
   }
 
   getConversation(): Observable<ConversationResponse> {
-    return this.http.get<ConversationResponse>(`${this.baseUrl}/conversation`);
+    return this.http.get<ConversationResponse>(`${this.baseUrl}/conversation`, { params: this.sessionParams() });
   }
 
   getProfile(): Observable<ProfileResponse> {
-    return this.http.get<ProfileResponse>(`${this.baseUrl}/profile`);
+    return this.http.get<ProfileResponse>(`${this.baseUrl}/profile`, { params: this.sessionParams() });
   }
 
   getPlan(): Observable<PlanResponse> {
-    return this.http.get<PlanResponse>(`${this.baseUrl}/plan`);
+    return this.http.get<PlanResponse>(`${this.baseUrl}/plan`, { params: this.sessionParams() });
+  }
+
+  private sessionParams(): Record<string, string> {
+    const sessionId = this.sessionId;
+    return sessionId ? { sessionId } : {};
   }
 
 }
\ No newline at end of file